@@ -0,0 +1,47 @@
+package com.swms.plugins.outbound.sm;
+
+import com.swms.mdm.api.main.data.dto.SkuMainDataDTO;
+import com.swms.wms.api.basic.dto.ContainerDTO;
+import com.swms.wms.api.stock.dto.SkuBatchAttributeDTO;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The lookups of the skus known to exist, their batch attributes and the containers of the orders of one ingestion
+ * window, shared by the orders that use the same sku or bin code. Sku keys are skuCode + ownerCode.
+ */
+public class BinCodeLookups {
+
+    private final Map<Pair<String, String>, CompletableFuture<SkuMainDataDTO>> skuFutures;
+    private final Map<Pair<String, String>, CompletableFuture<SkuBatchAttributeDTO>> skuBatchAttributeFutures;
+    private final Map<String, CompletableFuture<ContainerDTO>> containerFutures;
+
+    public BinCodeLookups(Map<Pair<String, String>, CompletableFuture<SkuMainDataDTO>> skuFutures,
+                          Map<Pair<String, String>, CompletableFuture<SkuBatchAttributeDTO>> skuBatchAttributeFutures,
+                          Map<String, CompletableFuture<ContainerDTO>> containerFutures) {
+        this.skuFutures = skuFutures;
+        this.skuBatchAttributeFutures = skuBatchAttributeFutures;
+        this.containerFutures = containerFutures;
+    }
+
+    public CompletableFuture<SkuMainDataDTO> getSku(Pair<String, String> skuKey) {
+        return skuFutures.get(skuKey);
+    }
+
+    public CompletableFuture<SkuBatchAttributeDTO> getSkuBatchAttribute(Pair<String, String> skuKey) {
+        return skuBatchAttributeFutures.get(skuKey);
+    }
+
+    public CompletableFuture<ContainerDTO> getContainer(String binCode) {
+        return containerFutures.get(binCode);
+    }
+
+    /**
+     * The lookups one order needs. The skus the order wrote itself are not included, the order looks them up itself.
+     */
+    public record Request(String warehouseCode, Set<Pair<String, String>> skuKeys, Set<String> binCodes) {
+    }
+}
@@ -0,0 +1,184 @@
+package com.swms.plugins.outbound.sm;
+
+import com.swms.wms.api.basic.dto.ContainerDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+
+/**
+ * Bounded cache of the containers of the manual area bin codes, by warehouse code and bin code.
+ * <p>
+ * If a known bin codes file is given, every bin code ever loaded is remembered in it; the first time a warehouse is used
+ * after a restart, all its remembered bin codes are loaded again one by one in a single background task. Entries expire
+ * after {@code expireMillis}.
+ */
+@Slf4j
+public class BinContainerCache {
+
+    private final int maxEntries;
+    private final long expireMillis;
+    private final Path knownBinCodesFile;
+    private final BiFunction<String, String, ContainerDTO> loader;
+    private final Executor preloadExecutor;
+
+    // warehouseCode + binCode >>> container, guarded by this
+    private final LinkedHashMap<String, CachedContainer> containers;
+
+    // warehouseCode >>> bin codes ever loaded
+    private final Map<String, Set<String>> knownBinCodes = new ConcurrentHashMap<>();
+    private final Set<String> preloadedWarehouses = ConcurrentHashMap.newKeySet();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    /**
+     * @param knownBinCodesFile the file to remember the loaded bin codes in, null to not remember them
+     * @param loader            query the container of a bin code by warehouse code and bin code
+     */
+    public BinContainerCache(int maxEntries, long expireMillis, Path knownBinCodesFile,
+                             BiFunction<String, String, ContainerDTO> loader, Executor preloadExecutor,
+                             MeterRegistry meterRegistry) {
+        this.maxEntries = maxEntries;
+        this.expireMillis = expireMillis;
+        this.knownBinCodesFile = knownBinCodesFile;
+        this.loader = loader;
+        this.preloadExecutor = preloadExecutor;
+        this.containers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedContainer> eldest) {
+                return size() > BinContainerCache.this.maxEntries;
+            }
+        };
+
+        this.hitCounter = Counter.builder("sentrix.bin.container.cache.hit").register(meterRegistry);
+        this.missCounter = Counter.builder("sentrix.bin.container.cache.miss").register(meterRegistry);
+        Gauge.builder("sentrix.bin.container.cache.hit.rate", this, BinContainerCache::hitRate).register(meterRegistry);
+        Gauge.builder("sentrix.bin.container.cache.size", this, BinContainerCache::size).register(meterRegistry);
+
+        readKnownBinCodes();
+    }
+
+    /**
+     * @return null on a miss
+     */
+    public ContainerDTO getIfPresent(String warehouseCode, String binCode) {
+        ContainerDTO container = cachedContainer(warehouseCode, binCode);
+        if (container == null) {
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        return container;
+    }
+
+    /**
+     * Query the container of the bin code and cache it.
+     */
+    public ContainerDTO load(String warehouseCode, String binCode) {
+        ContainerDTO container = loader.apply(warehouseCode, binCode);
+        if (container == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            containers.put(key(warehouseCode, binCode), new CachedContainer(container, System.currentTimeMillis()));
+        }
+        rememberBinCode(warehouseCode, binCode);
+        return container;
+    }
+
+    /**
+     * Load all the remembered bin codes of the warehouse in one background task, once per warehouse.
+     */
+    public void preload(String warehouseCode) {
+        if (warehouseCode == null || !preloadedWarehouses.add(warehouseCode)) {
+            return;
+        }
+        List<String> binCodes = List.copyOf(knownBinCodes.getOrDefault(warehouseCode, Set.of()));
+        if (binCodes.isEmpty()) {
+            return;
+        }
+        log.info("preload bin containers, warehouse code: {}, bin codes: {}", warehouseCode, binCodes.size());
+        preloadExecutor.execute(() -> binCodes.forEach(binCode -> {
+            // 已被订单查询加载的格口不再重复加载
+            if (cachedContainer(warehouseCode, binCode) != null) {
+                return;
+            }
+            try {
+                load(warehouseCode, binCode);
+            } catch (Exception e) {
+                log.warn("preload bin container failed, warehouse code: {}, bin code: {}", warehouseCode, binCode, e);
+            }
+        }));
+    }
+
+    private ContainerDTO cachedContainer(String warehouseCode, String binCode) {
+        CachedContainer cached;
+        synchronized (this) {
+            cached = containers.get(key(warehouseCode, binCode));
+        }
+        if (cached == null || System.currentTimeMillis() - cached.loadedTime > expireMillis) {
+            return null;
+        }
+        return cached.container;
+    }
+
+    private synchronized int size() {
+        return containers.size();
+    }
+
+    private double hitRate() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private void rememberBinCode(String warehouseCode, String binCode) {
+        if (knownBinCodesFile == null || !knownBinCodes.computeIfAbsent(warehouseCode, k -> ConcurrentHashMap.newKeySet()).add(binCode)) {
+            return;
+        }
+        synchronized (knownBinCodes) {
+            try {
+                Files.createDirectories(knownBinCodesFile.getParent());
+                Files.writeString(knownBinCodesFile, warehouseCode + "\t" + binCode + System.lineSeparator(),
+                        StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                log.warn("remember bin code failed, file: {}", knownBinCodesFile, e);
+            }
+        }
+    }
+
+    private void readKnownBinCodes() {
+        if (knownBinCodesFile == null || !Files.exists(knownBinCodesFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(knownBinCodesFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length == 2) {
+                    knownBinCodes.computeIfAbsent(parts[0], k -> ConcurrentHashMap.newKeySet()).add(parts[1]);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("read known bin codes failed, file: {}", knownBinCodesFile, e);
+        }
+    }
+
+    private static String key(String warehouseCode, String binCode) {
+        return warehouseCode + "\t" + binCode;
+    }
+
+    private record CachedContainer(ContainerDTO container, long loadedTime) {
+    }
+}
@@ -0,0 +1,119 @@
+package com.swms.plugins.outbound.sm;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Gathers the requests of concurrent callers arriving within a short window and handles them as one batch.
+ * <p>
+ * Windows are kept per partition, e.g. per tenant, and only requests of the same partition share a window. The first
+ * caller of a window is its leader: it waits until the window is over or full, then runs the batch function on its own
+ * thread, with its own context, and hands every caller its own result. The other callers only wait for their result,
+ * so the batch function should only read. It returns one result per request, in request order; an exception thrown by
+ * the batch function fails every caller of the window.
+ */
+@Slf4j
+public class IngestionWindow<R, T> {
+
+    private final long windowMillis;
+    private final int maxRequests;
+    private final Function<List<R>, List<T>> batchFunction;
+
+    // partition >>> open window, guarded by this
+    private final Map<Object, Window<R, T>> openWindows = new HashMap<>();
+
+    /**
+     * @param windowMillis how long a window stays open, 0 to handle every request alone without waiting
+     */
+    public IngestionWindow(long windowMillis, int maxRequests, Function<List<R>, List<T>> batchFunction) {
+        this.windowMillis = windowMillis;
+        this.maxRequests = maxRequests;
+        this.batchFunction = batchFunction;
+    }
+
+    /**
+     * @param partition the partition of the request, requests are only batched with requests of an equal partition
+     */
+    public T submit(Object partition, R request) {
+        if (windowMillis <= 0) {
+            return batchFunction.apply(List.of(request)).get(0);
+        }
+
+        Window<R, T> window;
+        CompletableFuture<T> result = new CompletableFuture<>();
+        boolean leader;
+        synchronized (this) {
+            window = openWindows.get(partition);
+            leader = window == null;
+            if (leader) {
+                window = new Window<>();
+                openWindows.put(partition, window);
+            }
+            window.requests.add(request);
+            window.results.add(result);
+            if (window.requests.size() >= maxRequests) {
+                // 窗口已满，唤醒 leader 立即处理
+                openWindows.remove(partition);
+                notifyAll();
+            }
+        }
+
+        if (leader) {
+            awaitClose(partition, window);
+            run(window);
+        }
+        return join(result);
+    }
+
+    private synchronized void awaitClose(Object partition, Window<R, T> window) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        try {
+            long remainingNanos;
+            while (openWindows.get(partition) == window && (remainingNanos = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            openWindows.remove(partition, window);
+        }
+    }
+
+    private void run(Window<R, T> window) {
+        log.debug("handle ingestion window, requests: {}", window.requests.size());
+        List<T> results;
+        try {
+            results = batchFunction.apply(window.requests);
+        } catch (RuntimeException e) {
+            window.results.forEach(result -> result.completeExceptionally(e));
+            return;
+        }
+        for (int i = 0; i < window.results.size(); i++) {
+            window.results.get(i).complete(results.get(i));
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private static class Window<R, T> {
+        private final List<R> requests = new ArrayList<>();
+        private final List<CompletableFuture<T>> results = new ArrayList<>();
+    }
+}
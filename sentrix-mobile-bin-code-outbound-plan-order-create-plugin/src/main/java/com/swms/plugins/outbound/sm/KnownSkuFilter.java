@@ -0,0 +1,87 @@
+package com.swms.plugins.outbound.sm;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of (owner code, barcode) pairs known to exist as skus.
+ * <p>
+ * A pair is added once its sku was found, so the filter never reports a pair that was not found before; a false
+ * positive is possible at about {@code falsePositiveRate}, and callers verify a positive by looking the sku up.
+ * <p>
+ * The filter is not loaded from the existing skus: it starts empty after every restart and only learns the skus
+ * looked up since, so until then every sku is written again as before. Once more than {@code expectedSkus} pairs were
+ * added, the false positive rate grows beyond {@code falsePositiveRate}.
+ */
+public class KnownSkuFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashFunctions;
+
+    public KnownSkuFilter(long expectedSkus, double falsePositiveRate, MeterRegistry meterRegistry) {
+        // m = -n * ln(p) / (ln2)^2, k = m / n * ln2
+        long optimalBits = (long) Math.ceil(-expectedSkus * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words * 64;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedSkus * Math.log(2)));
+
+        Gauge.builder("sentrix.bin.code.known.sku.filter.fill.ratio", this, KnownSkuFilter::fillRatio).register(meterRegistry);
+    }
+
+    public boolean mightContain(String ownerCode, String barcode) {
+        long hash = hash(ownerCode, barcode);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long index = bitIndex(hash1 + i * hash2);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(String ownerCode, String barcode) {
+        long hash = hash(ownerCode, barcode);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long index = bitIndex(hash1 + i * hash2);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                // 并发设置同一个字，重试
+            }
+        }
+    }
+
+    private long bitIndex(int combinedHash) {
+        return (combinedHash & Integer.MAX_VALUE) % bitSize;
+    }
+
+    private double fillRatio() {
+        long setBits = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            setBits += Long.bitCount(bits.get(i));
+        }
+        return (double) setBits / bitSize;
+    }
+
+    private static long hash(String ownerCode, String barcode) {
+        // FNV-1a 64 位
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : (ownerCode + "\t" + barcode).getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -6,6 +6,8 @@ import com.swms.mdm.api.main.data.dto.BarcodeDTO;
 import com.swms.mdm.api.main.data.dto.SkuMainDataDTO;
 import com.swms.plugin.extend.extensions.OperationContext;
 import com.swms.plugin.extend.wms.outbound.IOutboundPlanOrderCreatePlugin;
+import com.swms.plugins.common.PluginStopListener;
+import com.swms.plugins.common.ThreadContextSnapshot;
 import com.swms.wms.api.basic.IContainerApi;
 import com.swms.wms.api.basic.dto.ContainerDTO;
 import com.swms.wms.api.outbound.dto.OutboundPlanOrderDTO;
@@ -15,6 +17,11 @@ import com.swms.wms.api.stock.dto.SkuBatchAttributeDTO;
 import com.swms.wms.api.stock.dto.StockCreateDTO;
 import com.swms.wms.api.stock.event.StockCreateEvent;
 import com.swms.wms.api.task.constants.OperationTaskTypeEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.context.ThreadLocalAccessor;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
@@ -23,27 +30,96 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.pf4j.Extension;
+import org.pf4j.PluginManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 @Extension
 @RequiredArgsConstructor
 public class SentrixMobileBinCodeOutboundPlanOrderCreatePlugin implements IOutboundPlanOrderCreatePlugin {
 
+    private static final String PLUGIN_ID = "Sentrix-Mobile-Bin-Code-Outbound-Plan-Order-Create-Plugin-0.0.1";
+
     // 人工区 8 区格口位置字段
     private static final String BIN_CODE = "binCode";
     private static final String BAR_CODE = "barcode";
 
+    // 并发查询 sku、批次属性和容器的线程数和排队上限，队列满或插件已停止时由调用线程自己查询
+    private static final int REMOTE_LOOKUP_PARALLELISM = 16;
+    private static final int REMOTE_LOOKUP_QUEUE_CAPACITY = 1024;
+
+    // 格口容器缓存的数量上限、过期时间和待预加载的仓库数上限
+    private static final int BIN_CONTAINER_CACHE_MAX_ENTRIES = 20000;
+    private static final long BIN_CONTAINER_CACHE_EXPIRE_MILLIS = 12 * 60 * 60 * 1000L;
+    private static final int BIN_CONTAINER_PRELOAD_QUEUE_CAPACITY = 64;
+    // 已知 sku 过滤器的容量和误判率
+    private static final long KNOWN_SKU_FILTER_EXPECTED_SKUS = 1_000_000;
+    private static final double KNOWN_SKU_FILTER_FALSE_POSITIVE_RATE = 0.001;
+
+    // 跨订单合并查询的窗口时长和每个窗口的最大订单数，窗口时长为 0 时逐单处理，默认关闭
+    private static final long INGESTION_WINDOW_MILLIS = Long.getLong("sentrix.bin-code.ingestion-window-millis", 0);
+    private static final int INGESTION_WINDOW_MAX_ORDERS = 200;
+
+    // 记录已知格口的文件，未配置时不记录，重启后也不预加载
+    private static final String KNOWN_BIN_CODES_FILE = System.getProperty("sentrix.bin-code.known-bin-codes-file");
+
     private final ISkuMainDataApi skuMainDataApi;
 
     private final ISkuBatchAttributeApi skuBatchAttributeApi;
 
     private final IContainerApi containerApi;
 
+    private final PlatformTransactionManager transactionManager;
+
+    private final PluginManager pluginManager;
+
+    private final AtomicBoolean stopListenerRegistered = new AtomicBoolean();
+
+    private final ThreadPoolExecutor remoteLookupExecutor = new ThreadPoolExecutor(REMOTE_LOOKUP_PARALLELISM,
+            REMOTE_LOOKUP_PARALLELISM, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(REMOTE_LOOKUP_QUEUE_CAPACITY), r -> {
+        Thread thread = new Thread(r, "sentrix-mobile-bin-code-lookup");
+        thread.setDaemon(true);
+        return thread;
+    }, (task, executor) -> task.run());
+    private final Executor lookupExecutor = withCallerContext(remoteLookupExecutor);
+
+    // 格口预加载使用单独的低优先级线程，不占用订单查询线程；排队的仓库过多时放弃预加载
+    private final ThreadPoolExecutor binContainerPreloadExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(BIN_CONTAINER_PRELOAD_QUEUE_CAPACITY), r -> {
+        Thread thread = new Thread(r, "sentrix-mobile-bin-code-preload");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardPolicy());
+
+    private final BinContainerCache binContainerCache = new BinContainerCache(BIN_CONTAINER_CACHE_MAX_ENTRIES,
+            BIN_CONTAINER_CACHE_EXPIRE_MILLIS, KNOWN_BIN_CODES_FILE == null ? null : Path.of(KNOWN_BIN_CODES_FILE),
+            this::queryContainer, withCallerContext(binContainerPreloadExecutor), Metrics.globalRegistry);
+
+    private final KnownSkuFilter knownSkuFilter = new KnownSkuFilter(KNOWN_SKU_FILTER_EXPECTED_SKUS,
+            KNOWN_SKU_FILTER_FALSE_POSITIVE_RATE, Metrics.globalRegistry);
+    private final Counter skippedSkuUpsertCounter = Counter.builder("sentrix.bin.code.sku.upsert.skipped").register(Metrics.globalRegistry);
+    private final Counter skuUpsertCounter = Counter.builder("sentrix.bin.code.sku.upsert").register(Metrics.globalRegistry);
+
+    private final IngestionWindow<BinCodeLookups.Request, BinCodeLookups> ingestionWindow = new IngestionWindow<>(
+            INGESTION_WINDOW_MILLIS, INGESTION_WINDOW_MAX_ORDERS, this::lookup);
+
     @Override
     public void beforeDoOperation(OperationContext<OutboundPlanOrderDTO> operationContext) {
         log.info("try create outbound detail bin code and barcode");
+        registerStopListener();
         OutboundPlanOrderDTO operationObject = operationContext.getOperationObject();
         if (CollectionUtils.isEmpty(operationObject.getDetails())) {
             log.warn("outbound details is empty");
@@ -78,44 +154,60 @@ public class SentrixMobileBinCodeOutboundPlanOrderCreatePlugin implements IOutbo
             return;
         }
 
-        List<SkuMainDataDTO> skuMainDataDTOS = barcodeGroupByOwnerCodeMap.entrySet().stream()
-                .filter(entry -> StringUtils.isNotEmpty(entry.getValue()))
-                .map(entry -> {
-                    String ownerCode = entry.getKey().getLeft();
+        // skuCode + ownerCode
+        Set<Pair<String, String>> skuKeys = new HashSet<>();
+        Set<String> binCodes = new HashSet<>();
+        echoOwnerSkuBinQtyMap.keySet().forEach(key -> {
+            skuKeys.add(Pair.of(barcodeGroupByOwnerCodeMap.get(key), key.getLeft()));
+            binCodes.add(key.getMiddle());
+        });
 
-                    SkuMainDataDTO skuMainDataDTO = new SkuMainDataDTO();
-                    skuMainDataDTO.setWarehouseCode(operationObject.getWarehouseCode());
-                    skuMainDataDTO.setOwnerCode(ownerCode);
-                    skuMainDataDTO.setSkuCode(entry.getValue());
-                    skuMainDataDTO.setSkuName(entry.getValue());
-                    skuMainDataDTO.setSkuBarcode(new BarcodeDTO(List.of(entry.getValue())));
-                    return skuMainDataDTO;
-                }).toList();
+        // 已知存在的 sku 不再写入，其余 sku 一次写入后和它们的批次属性一起查询
+        String warehouseCode = operationObject.getWarehouseCode();
+        Set<Pair<String, String>> knownSkuKeys = new HashSet<>();
+        Set<Pair<String, String>> writtenSkuKeys = upsertSkus(warehouseCode, skuKeys, knownSkuKeys);
+        BinCodeLookups writtenSkuLookups = lookupWrittenSkus(writtenSkuKeys);
 
-        skuMainDataApi.createOrUpdateBatch(skuMainDataDTOS);
-        log.info("create barcode sku success, create size: {}", skuMainDataDTOS.size());
+        // 同一窗口内到达的订单合并查询已知 sku、批次属性和容器
+        Set<Pair<String, String>> lookupSkuKeys = new HashSet<>(skuKeys);
+        lookupSkuKeys.removeAll(writtenSkuKeys);
+        BinCodeLookups lookups = ingestionWindow.submit(contextPartition(),
+                new BinCodeLookups.Request(warehouseCode, lookupSkuKeys, binCodes));
 
+        // skuCode + ownerCode >>> lookups of the sku and its batch attribute
+        Map<Pair<String, String>, BinCodeLookups> skuLookups = new HashMap<>();
+        skuKeys.forEach(skuKey -> skuLookups.put(skuKey, writtenSkuKeys.contains(skuKey) ? writtenSkuLookups : lookups));
 
+        // 已知存在但查询不到的 sku，过滤器误判或 sku 已删除，一次补写后再一起查询
+        List<Pair<String, String>> missingSkuKeys = knownSkuKeys.stream()
+                .filter(skuKey -> join(lookups.getSku(skuKey)) == null)
+                .toList();
+        if (!missingSkuKeys.isEmpty()) {
+            log.info("known skus not found, create them, size: {}", missingSkuKeys.size());
+            createOrUpdateSkus(warehouseCode, missingSkuKeys);
+            BinCodeLookups missingSkuLookups = lookupWrittenSkus(missingSkuKeys);
+            missingSkuKeys.forEach(skuKey -> skuLookups.put(skuKey, missingSkuLookups));
+        }
+
+        List<StockCreateDTO> stockCreateDTOS = new ArrayList<>();
         echoOwnerSkuBinQtyMap.forEach((key, qty) -> {
             String ownerCode = key.getLeft();
             String binCode = key.getMiddle();
             String barCode = barcodeGroupByOwnerCodeMap.get(key);
-            SkuMainDataDTO skuMainData = skuMainDataApi.getSkuMainData(barCode, ownerCode);
+            Pair<String, String> skuKey = Pair.of(barCode, ownerCode);
+            BinCodeLookups skuLookup = skuLookups.get(skuKey);
+            SkuMainDataDTO skuMainData = join(skuLookup.getSku(skuKey));
 
             if (skuMainData == null) {
                 log.warn("cannot find sku info, sku code: {}, ownerCode: {}, binCode: {}", barCode, ownerCode, binCode);
                 return;
             }
 
-            // 批次属性
-            Map<String, Object> batchAttribute = new HashMap<>();
-//            batchAttribute.put(ParserObjectEnum.INBOUND_DATE.getLabel(), DateFormatUtil.getDateFormatYmdNowWithoutLink());
-
-            SkuBatchAttributeDTO skuBatchAttribute = skuBatchAttributeApi.getOrCreateSkuBatchAttribute(skuMainData.getId(), batchAttribute);
-            ContainerDTO containerDTO = containerApi.queryContainer(binCode, binCode, operationObject.getWarehouseCode());
+            SkuBatchAttributeDTO skuBatchAttribute = join(skuLookup.getSkuBatchAttribute(skuKey));
+            ContainerDTO containerDTO = join(lookups.getContainer(binCode));
 
             StockCreateDTO.StockCreateDTOBuilder stockCreateDTOBuilder = StockCreateDTO.builder();
-            stockCreateDTOBuilder.warehouseCode(operationObject.getWarehouseCode());
+            stockCreateDTOBuilder.warehouseCode(warehouseCode);
             stockCreateDTOBuilder.skuBatchAttributeId(skuBatchAttribute.getId());
             stockCreateDTOBuilder.skuId(skuMainData.getId());
             stockCreateDTOBuilder.transferQty(qty);
@@ -133,10 +225,226 @@ public class SentrixMobileBinCodeOutboundPlanOrderCreatePlugin implements IOutbo
             stockCreateDTOBuilder.operationTaskType(OperationTaskTypeEnum.ADJUST);
             stockCreateDTOBuilder.operateSource(StockOperateSourceEnum.OUTSIDE);
 
-            StockCreateDTO stockCreateDTO = stockCreateDTOBuilder.build();
+            stockCreateDTOS.add(stockCreateDTOBuilder.build());
+        });
 
-            DomainEventPublisher.directSendSyncEvent(new StockCreateEvent(stockCreateDTO));
+        createStocks(stockCreateDTOS);
+    }
+
+    /**
+     * Stop the lookup and preload threads when the plugin stops.
+     */
+    private void registerStopListener() {
+        if (stopListenerRegistered.compareAndSet(false, true)) {
+            pluginManager.addPluginStateListener(new PluginStopListener(PLUGIN_ID, () -> {
+                // 已排队的查询还有订单在等待，让它们执行完；预加载直接放弃
+                remoteLookupExecutor.shutdown();
+                binContainerPreloadExecutor.shutdownNow();
+            }));
+        }
+    }
+
+    /**
+     * Start the lookups of the skus known to exist, their batch attributes and the containers of all orders of one
+     * ingestion window, once per warehouse and key. The lookups run on the lookup threads with the tenant and user
+     * context of the current thread, which all orders of the window share.
+     *
+     * @return the lookups of each order, in request order
+     */
+    private List<BinCodeLookups> lookup(List<BinCodeLookups.Request> requests) {
+        BinCodeLookups[] results = new BinCodeLookups[requests.size()];
+
+        // warehouseCode >>> request indexes
+        Map<String, List<Integer>> requestIndexesByWarehouse = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            requestIndexesByWarehouse.computeIfAbsent(requests.get(i).warehouseCode(), k -> new ArrayList<>()).add(i);
+        }
+
+        requestIndexesByWarehouse.forEach((warehouseCode, requestIndexes) -> {
+            binContainerCache.preload(warehouseCode);
+
+            // 同一 sku、同一格口只查询一次，各个 sku 和格口并发查询；sku 查到后立即查询它的批次属性
+            Map<Pair<String, String>, CompletableFuture<SkuMainDataDTO>> skuFutures = new HashMap<>();
+            Map<Pair<String, String>, CompletableFuture<SkuBatchAttributeDTO>> skuBatchAttributeFutures = new HashMap<>();
+            Map<String, CompletableFuture<ContainerDTO>> containerFutures = new HashMap<>();
+            BinCodeLookups warehouseLookups = new BinCodeLookups(skuFutures, skuBatchAttributeFutures, containerFutures);
+            for (Integer requestIndex : requestIndexes) {
+                BinCodeLookups.Request request = requests.get(requestIndex);
+                request.skuKeys().forEach(skuKey -> skuFutures.computeIfAbsent(skuKey,
+                        k -> lookupSku(k, lookupExecutor, skuBatchAttributeFutures)));
+                request.binCodes().forEach(binCode -> containerFutures.computeIfAbsent(binCode, k -> {
+                    ContainerDTO container = binContainerCache.getIfPresent(warehouseCode, k);
+                    return container != null
+                            ? CompletableFuture.completedFuture(container)
+                            : CompletableFuture.supplyAsync(() -> binContainerCache.load(warehouseCode, k), lookupExecutor);
+                }));
+                results[requestIndex] = warehouseLookups;
+            }
         });
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Look up the skus this order wrote and their batch attributes, all of them at once on the lookup threads.
+     * <p>
+     * When the current thread is in a transaction the writes are not committed yet and only it can see them, so they
+     * are looked up on the current thread instead.
+     */
+    private BinCodeLookups lookupWrittenSkus(Collection<Pair<String, String>> skuKeys) {
+        Executor executor = TransactionSynchronizationManager.isActualTransactionActive() ? Runnable::run : lookupExecutor;
+        Map<Pair<String, String>, CompletableFuture<SkuMainDataDTO>> skuFutures = new HashMap<>();
+        Map<Pair<String, String>, CompletableFuture<SkuBatchAttributeDTO>> skuBatchAttributeFutures = new HashMap<>();
+        skuKeys.forEach(skuKey -> skuFutures.put(skuKey, lookupSku(skuKey, executor, skuBatchAttributeFutures)));
+        return new BinCodeLookups(skuFutures, skuBatchAttributeFutures, Map.of());
+    }
+
+    /**
+     * Start the lookup of a sku, then of its batch attribute as soon as the sku is found.
+     *
+     * @param skuBatchAttributeFutures filled with the lookup of the batch attribute
+     */
+    private CompletableFuture<SkuMainDataDTO> lookupSku(Pair<String, String> skuKey, Executor executor,
+                                                        Map<Pair<String, String>, CompletableFuture<SkuBatchAttributeDTO>> skuBatchAttributeFutures) {
+        CompletableFuture<SkuMainDataDTO> skuFuture = CompletableFuture.supplyAsync(
+                () -> findSkuMainData(skuKey.getLeft(), skuKey.getRight()), executor);
+        skuBatchAttributeFutures.put(skuKey, skuFuture.thenApplyAsync(this::getOrCreateSkuBatchAttribute, executor));
+        return skuFuture;
+    }
+
+    /**
+     * Create the skus of the order that are not known to exist in one request.
+     *
+     * @param knownSkuKeys filled with the keys of skus that are known to exist and were not written
+     * @return the keys of the written skus
+     */
+    private Set<Pair<String, String>> upsertSkus(String warehouseCode, Set<Pair<String, String>> skuKeys,
+                                                 Set<Pair<String, String>> knownSkuKeys) {
+        Set<Pair<String, String>> upsertSkuKeys = new HashSet<>();
+        skuKeys.stream()
+                .filter(skuKey -> StringUtils.isNotEmpty(skuKey.getLeft()))
+                .forEach(skuKey -> {
+                    if (knownSkuFilter.mightContain(skuKey.getRight(), skuKey.getLeft())) {
+                        knownSkuKeys.add(skuKey);
+                    } else {
+                        upsertSkuKeys.add(skuKey);
+                    }
+                });
+        skippedSkuUpsertCounter.increment(knownSkuKeys.size());
+
+        if (!upsertSkuKeys.isEmpty()) {
+            createOrUpdateSkus(warehouseCode, upsertSkuKeys);
+        }
+        log.info("create barcode sku success, create size: {}, skip known size: {}", upsertSkuKeys.size(), knownSkuKeys.size());
+        return upsertSkuKeys;
+    }
+
+    private void createOrUpdateSkus(String warehouseCode, Collection<Pair<String, String>> skuKeys) {
+        skuMainDataApi.createOrUpdateBatch(skuKeys.stream()
+                .map(skuKey -> buildSkuMainData(warehouseCode, skuKey.getRight(), skuKey.getLeft()))
+                .toList());
+        skuUpsertCounter.increment(skuKeys.size());
+    }
+
+    /**
+     * Publish the stock create events of one order in one transaction, so the stock handlers join it instead of
+     * committing one transaction per stock.
+     * <p>
+     * When the order is created in a transaction the events join it, so the stocks commit or roll back with the order.
+     * Only when there is none a transaction is started for the events.
+     */
+    private void createStocks(List<StockCreateDTO> stockCreateDTOS) {
+        if (stockCreateDTOS.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            publishStockCreateEvents(stockCreateDTOS);
+        } else {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> publishStockCreateEvents(stockCreateDTOS));
+        }
+        log.info("create bin code stocks success, size: {}", stockCreateDTOS.size());
+    }
+
+    private void publishStockCreateEvents(List<StockCreateDTO> stockCreateDTOS) {
+        stockCreateDTOS.forEach(stockCreateDTO -> DomainEventPublisher.directSendSyncEvent(new StockCreateEvent(stockCreateDTO)));
+    }
+
+    /**
+     * Look up the sku and remember it as known.
+     */
+    private SkuMainDataDTO findSkuMainData(String skuCode, String ownerCode) {
+        SkuMainDataDTO skuMainData = skuMainDataApi.getSkuMainData(skuCode, ownerCode);
+        if (skuMainData != null) {
+            knownSkuFilter.put(ownerCode, skuCode);
+        }
+        return skuMainData;
+    }
+
+    private SkuMainDataDTO buildSkuMainData(String warehouseCode, String ownerCode, String barcode) {
+        SkuMainDataDTO skuMainDataDTO = new SkuMainDataDTO();
+        skuMainDataDTO.setWarehouseCode(warehouseCode);
+        skuMainDataDTO.setOwnerCode(ownerCode);
+        skuMainDataDTO.setSkuCode(barcode);
+        skuMainDataDTO.setSkuName(barcode);
+        skuMainDataDTO.setSkuBarcode(new BarcodeDTO(List.of(barcode)));
+        return skuMainDataDTO;
+    }
+
+    private SkuBatchAttributeDTO getOrCreateSkuBatchAttribute(SkuMainDataDTO skuMainData) {
+        if (skuMainData == null) {
+            return null;
+        }
+
+        // 批次属性
+        Map<String, Object> batchAttribute = new HashMap<>();
+//        batchAttribute.put(ParserObjectEnum.INBOUND_DATE.getLabel(), DateFormatUtil.getDateFormatYmdNowWithoutLink());
+
+        return skuBatchAttributeApi.getOrCreateSkuBatchAttribute(skuMainData.getId(), batchAttribute);
+    }
+
+    private ContainerDTO queryContainer(String warehouseCode, String binCode) {
+        return containerApi.queryContainer(binCode, binCode, warehouseCode);
+    }
+
+    /**
+     * Run each task on the executor with the tenant and user context of the thread that submits it.
+     */
+    private static Executor withCallerContext(Executor executor) {
+        return task -> {
+            ThreadContextSnapshot context = ThreadContextSnapshot.capture();
+            executor.execute(() -> context.run(task));
+        };
+    }
+
+    /**
+     * The propagated thread local values of the current thread, e.g. tenant and user, so an ingestion window only
+     * gathers orders whose lookups may run with the context of any of them. The observation is left out, it differs
+     * for every request.
+     */
+    private static Map<Object, Object> contextPartition() {
+        Map<Object, Object> partition = new HashMap<>();
+        for (ThreadLocalAccessor<?> accessor : ContextRegistry.getInstance().getThreadLocalAccessors()) {
+            Object value = accessor.getValue();
+            if (value != null && !ObservationThreadLocalAccessor.KEY.equals(accessor.key())) {
+                partition.put(accessor.key(), value);
+            }
+        }
+        return partition;
+    }
+
+    /**
+     * Wait for a lookup, rethrowing its own exception as the sequential lookup did.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
     }
 
     @Override
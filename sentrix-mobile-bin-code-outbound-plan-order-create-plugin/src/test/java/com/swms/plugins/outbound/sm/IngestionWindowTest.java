@@ -0,0 +1,103 @@
+package com.swms.plugins.outbound.sm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestionWindowTest {
+
+    private static final String TENANT = "tenant";
+
+    private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    private List<String> handle(List<Integer> requests) {
+        batches.add(List.copyOf(requests));
+        return requests.stream().map(v -> "result" + v).toList();
+    }
+
+    @Test
+    void zeroWindowHandlesEveryRequestAlone() {
+        IngestionWindow<Integer, String> window = new IngestionWindow<>(0, 10, this::handle);
+
+        assertEquals("result1", window.submit(TENANT, 1));
+        assertEquals("result2", window.submit(TENANT, 2));
+        assertEquals(List.of(List.of(1), List.of(2)), batches);
+    }
+
+    @Test
+    void windowClosesAfterWindowMillis() {
+        IngestionWindow<Integer, String> window = new IngestionWindow<>(50, 10, this::handle);
+
+        long start = System.nanoTime();
+        assertEquals("result1", window.submit(TENANT, 1));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis >= 50, "elapsed millis: " + elapsedMillis);
+        assertEquals(List.of(List.of(1)), batches);
+    }
+
+    @Test
+    void fullWindowIsHandledWithoutWaiting() throws Exception {
+        IngestionWindow<Integer, String> window = new IngestionWindow<>(TimeUnit.MINUTES.toMillis(1), 3, this::handle);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 1; i <= 3; i++) {
+                int request = i;
+                results.add(CompletableFuture.supplyAsync(() -> window.submit(TENANT, request), executor));
+            }
+
+            for (int i = 1; i <= 3; i++) {
+                assertEquals("result" + i, results.get(i - 1).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, batches.size());
+            assertEquals(3, batches.get(0).size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void partitionsAreNotBatchedTogether() throws Exception {
+        IngestionWindow<Integer, String> window = new IngestionWindow<>(TimeUnit.MINUTES.toMillis(1), 2, this::handle);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CompletableFuture<String> tenant1First = CompletableFuture.supplyAsync(() -> window.submit("tenant1", 1), executor);
+            CompletableFuture<String> tenant2First = CompletableFuture.supplyAsync(() -> window.submit("tenant2", 2), executor);
+            CompletableFuture<String> tenant1Second = CompletableFuture.supplyAsync(() -> window.submit("tenant1", 3), executor);
+            CompletableFuture<String> tenant2Second = CompletableFuture.supplyAsync(() -> window.submit("tenant2", 4), executor);
+
+            assertEquals("result1", tenant1First.get(5, TimeUnit.SECONDS));
+            assertEquals("result2", tenant2First.get(5, TimeUnit.SECONDS));
+            assertEquals("result3", tenant1Second.get(5, TimeUnit.SECONDS));
+            assertEquals("result4", tenant2Second.get(5, TimeUnit.SECONDS));
+            assertEquals(2, batches.size());
+            for (List<Integer> batch : batches) {
+                // 同一租户的请求：1、3 或 2、4
+                assertEquals(batch.get(0) % 2, batch.get(1) % 2);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void batchFailureFailsEveryCaller() {
+        IngestionWindow<Integer, String> window = new IngestionWindow<>(10, 10, requests -> {
+            throw new IllegalStateException("lookup failed");
+        });
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> window.submit(TENANT, 1));
+        assertEquals("lookup failed", e.getMessage());
+    }
+}
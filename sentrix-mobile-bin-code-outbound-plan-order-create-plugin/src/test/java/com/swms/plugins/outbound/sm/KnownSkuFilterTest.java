@@ -0,0 +1,79 @@
+package com.swms.plugins.outbound.sm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KnownSkuFilterTest {
+
+    private static final int EXPECTED_SKUS = 10_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void emptyFilterContainsNothing() {
+        KnownSkuFilter filter = new KnownSkuFilter(EXPECTED_SKUS, FALSE_POSITIVE_RATE, new SimpleMeterRegistry());
+
+        assertFalse(filter.mightContain("owner", "barcode"));
+    }
+
+    @Test
+    void addedSkuIsAlwaysContained() {
+        KnownSkuFilter filter = new KnownSkuFilter(EXPECTED_SKUS, FALSE_POSITIVE_RATE, new SimpleMeterRegistry());
+        for (int i = 0; i < EXPECTED_SKUS; i++) {
+            filter.put("owner" + i % 7, "barcode" + i);
+        }
+
+        for (int i = 0; i < EXPECTED_SKUS; i++) {
+            assertTrue(filter.mightContain("owner" + i % 7, "barcode" + i));
+        }
+    }
+
+    @Test
+    void ownerCodeIsPartOfTheKey() {
+        KnownSkuFilter filter = new KnownSkuFilter(EXPECTED_SKUS, FALSE_POSITIVE_RATE, new SimpleMeterRegistry());
+        filter.put("owner1", "barcode");
+
+        assertTrue(filter.mightContain("owner1", "barcode"));
+        assertFalse(filter.mightContain("owner2", "barcode"));
+        // 分隔符防止拼接后相同
+        assertFalse(filter.mightContain("owner1b", "arcode"));
+    }
+
+    @Test
+    void falsePositiveRateStaysNearConfiguredRate() {
+        KnownSkuFilter filter = new KnownSkuFilter(EXPECTED_SKUS, FALSE_POSITIVE_RATE, new SimpleMeterRegistry());
+        for (int i = 0; i < EXPECTED_SKUS; i++) {
+            filter.put("owner", "barcode" + i);
+        }
+
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("owner", "unknown" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < probes * FALSE_POSITIVE_RATE * 2,
+                "false positives: " + falsePositives + " of " + probes);
+    }
+
+    @Test
+    void falsePositiveRateGrowsPastExpectedSkus() {
+        KnownSkuFilter filter = new KnownSkuFilter(EXPECTED_SKUS, FALSE_POSITIVE_RATE, new SimpleMeterRegistry());
+        for (int i = 0; i < EXPECTED_SKUS * 4; i++) {
+            filter.put("owner", "barcode" + i);
+        }
+
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("owner", "unknown" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives > probes * FALSE_POSITIVE_RATE * 2,
+                "false positives: " + falsePositives + " of " + probes);
+    }
+}
@@ -0,0 +1,163 @@
+package com.swms.plugins.outbound.sm;
+
+import com.swms.mdm.api.config.constants.UnionLocationEnum;
+import com.swms.mdm.api.config.dto.BarcodeParseResult;
+import com.swms.mdm.api.config.dto.BarcodeParseRuleDTO;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scan parsing latency over the rule sets and barcode mixes seen at the sites.
+ * <p>
+ * {@code legacy} is the parsing before the compiled rule set engine, compiling every rule's pattern on every scan;
+ * {@code in_order} and {@code adaptive} are the engine's two dispatch modes, as used by {@code defaultParse}. The scans
+ * are drawn from more barcodes than the engine remembers, so new barcodes run the rules instead of the memo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BarcodeParseBenchmark {
+
+    // 每轮扫描的条码数量，其中一部分是重复扫描；远多于引擎记住的条码数量
+    private static final int BARCODES = 1 << 16;
+    private static final int DISTINCT_BARCODES = 512;
+
+    /**
+     * ean13: most scans are EAN-13, matched by the first rule; catch_all: most scans are internal codes only the last,
+     * catch all rule matches; mixed: every kind of barcode equally often.
+     */
+    @Param({"ean13", "catch_all", "mixed"})
+    public String barcodeMix;
+
+    private List<BarcodeParseRuleDTO> parseRules;
+    private String[] barcodes;
+    private SentrixMobileBinCodeSkuBarcodeScanPlugin plugin;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        parseRules = List.of(
+                rule("^(\\d{13})$", null, UnionLocationEnum.RIGHT, "skuCode"),
+                rule("^(\\d{12})$", null, UnionLocationEnum.RIGHT, "skuCode"),
+                rule("^01(\\d{14})10(\\w{1,20})$", null, UnionLocationEnum.RIGHT, "skuCode", "batchNo"),
+                rule("^SKU-([A-Z0-9]{4,16})$", null, UnionLocationEnum.RIGHT, "skuCode"),
+                rule("^(\\w+)#(\\d+)$", "#1", UnionLocationEnum.RIGHT, "skuCode", "qty"),
+                rule("^([A-Z]{2}\\d{6,10})$", null, UnionLocationEnum.RIGHT, "skuCode"),
+                rule("^(.+)$", null, UnionLocationEnum.RIGHT, "skuCode"));
+        plugin = new SentrixMobileBinCodeSkuBarcodeScanPlugin(null, null, null);
+
+        Random random = new Random(42);
+        String[] distinct = new String[DISTINCT_BARCODES];
+        for (int i = 0; i < distinct.length; i++) {
+            distinct[i] = barcode(random);
+        }
+        barcodes = new String[BARCODES];
+        for (int i = 0; i < barcodes.length; i++) {
+            // 一半是重复扫描
+            barcodes[i] = random.nextBoolean() ? distinct[random.nextInt(distinct.length)] : barcode(random);
+        }
+    }
+
+    /**
+     * The dispatch mode, a separate state so that {@code parseOneRule}, which does not dispatch, runs once per mix.
+     */
+    @State(Scope.Benchmark)
+    public static class Dispatch {
+
+        @Param({"legacy", "in_order", "adaptive"})
+        public String dispatch;
+
+        private BarcodeParseRuleEngine engine;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            engine = new BarcodeParseRuleEngine("adaptive".equals(dispatch));
+        }
+    }
+
+    @Benchmark
+    public List<BarcodeParseResult> defaultParse(Dispatch dispatch) {
+        String barcode = barcodes[next++ & (BARCODES - 1)];
+        return "legacy".equals(dispatch.dispatch) ? legacyParse(barcode) : dispatch.engine.parse(barcode, parseRules);
+    }
+
+    @Benchmark
+    public List<BarcodeParseResult> parseOneRule() {
+        return plugin.parse(barcodes[next++ & (BARCODES - 1)], parseRules.get(parseRules.size() - 1));
+    }
+
+    private String barcode(Random random) {
+        int kind = switch (barcodeMix) {
+            case "ean13" -> random.nextInt(10) < 9 ? 0 : random.nextInt(6);
+            case "catch_all" -> random.nextInt(10) < 9 ? 6 : random.nextInt(6);
+            default -> random.nextInt(7);
+        };
+        return switch (kind) {
+            case 0 -> digits(random, 13);
+            case 1 -> digits(random, 12);
+            case 2 -> "01" + digits(random, 14) + "10" + "B" + digits(random, 6);
+            case 3 -> "SKU-" + digits(random, 8);
+            case 4 -> "P" + digits(random, 5);
+            case 5 -> "AB" + digits(random, 8);
+            default -> "INT-" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+        };
+    }
+
+    private static String digits(Random random, int length) {
+        StringBuilder digits = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    private static BarcodeParseRuleDTO rule(String regularExpression, String unionStr, UnionLocationEnum unionLocation,
+                                            String... resultFields) {
+        BarcodeParseRuleDTO parseRule = new BarcodeParseRuleDTO();
+        parseRule.setRegularExpression(regularExpression);
+        parseRule.setUnionStr(unionStr);
+        parseRule.setUnionLocation(unionLocation);
+        parseRule.setResultFields(List.of(resultFields));
+        return parseRule;
+    }
+
+    /**
+     * The parsing before the compiled rule set engine.
+     */
+    private List<BarcodeParseResult> legacyParse(String barcode) {
+        for (BarcodeParseRuleDTO parseRule : parseRules) {
+            String unionBarcode = parseRule.getUnionLocation() == UnionLocationEnum.LEFT
+                    ? StringUtils.join(parseRule.getUnionStr(), barcode) : StringUtils.join(barcode, parseRule.getUnionStr());
+            Matcher matcher = Pattern.compile(parseRule.getRegularExpression()).matcher(unionBarcode);
+            List<String> groups = new ArrayList<>(parseRule.getResultFields().size());
+            if (matcher.find()) {
+                for (int i = 1; i <= parseRule.getResultFields().size(); i++) {
+                    groups.add(matcher.group(i));
+                }
+            }
+            if (!groups.isEmpty() && groups.size() == parseRule.getResultFields().size()) {
+                List<BarcodeParseResult> results = new ArrayList<>(groups.size());
+                for (int i = 0; i < groups.size(); i++) {
+                    results.add(BarcodeParseResult.builder().fieldName(parseRule.getResultFields().get(i)).fieldValue(groups.get(i)).build());
+                }
+                return results;
+            }
+        }
+        return new ArrayList<>();
+    }
+}
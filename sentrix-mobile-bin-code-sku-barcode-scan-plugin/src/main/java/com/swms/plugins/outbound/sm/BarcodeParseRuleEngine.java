@@ -0,0 +1,350 @@
+package com.swms.plugins.outbound.sm;
+
+import com.swms.mdm.api.config.constants.UnionLocationEnum;
+import com.swms.mdm.api.config.dto.BarcodeParseResult;
+import com.swms.mdm.api.config.dto.BarcodeParseRuleDTO;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses barcodes with compiled barcode parse rule sets.
+ * <p>
+ * A rule set is compiled once and reused as long as the rules passed in have the same content; patterns are shared by
+ * all rule sets with the same regular expression. Before a rule's matcher runs, the rule is skipped if the barcode
+ * joined with the union string is shorter than any match, longer than any input a fully anchored expression accepts,
+ * or does not start with the literal prefix of an anchored expression. The joined barcode is never built: matchers
+ * read a view of the barcode and the union string, so a scan only allocates the view, the matchers it runs and its
+ * results. Nothing is kept per thread, so stopping the plugin leaves nothing behind on the host's threads.
+ * <p>
+ * In adaptive dispatch mode, each rule set counts the hits of every rule per scan shape (length and the class of the
+ * first character) and tries the rule hit most for the scan's shape first. If it matches, the rules configured before
+ * it are still checked in order, so the result is always the one the configured order gives; those whose length or
+ * prefix cannot fit the scan are rejected without running a matcher. The winning rule of recently parsed barcodes is
+ * remembered, so parsing a barcode seen before runs one matcher at most.
+ */
+@Slf4j
+public class BarcodeParseRuleEngine {
+
+    // 缓存的规则集和正则数量上限
+    private static final int MAX_RULE_SETS = 8;
+    private static final int MAX_PATTERNS = 1024;
+    // 每个规则集记住匹配规则的条码数量上限
+    private static final int MAX_REMEMBERED_BARCODES = 4096;
+    // 扫描形态：条码长度（超过的按最大值算）和首字符类别
+    private static final int SHAPE_MAX_LENGTH = 31;
+    private static final int SHAPE_PREFIX_CLASSES = 4;
+    private static final int SHAPES = (SHAPE_MAX_LENGTH + 1) * SHAPE_PREFIX_CLASSES;
+    // 命中次数达到该值后减半，适应扫描分布的变化
+    private static final int HIT_DECAY_THRESHOLD = 1 << 20;
+    private static final int NO_MATCH = -1;
+
+    private final boolean adaptiveDispatch;
+    private final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+    // 最近使用的规则集，整体替换
+    private volatile CompiledRuleSet[] ruleSets = new CompiledRuleSet[0];
+
+    /**
+     * @param adaptiveDispatch try the rules most likely to match first, see the class comment
+     */
+    public BarcodeParseRuleEngine(boolean adaptiveDispatch) {
+        this.adaptiveDispatch = adaptiveDispatch;
+    }
+
+    /**
+     * Parse the barcode with the first rule that matches it.
+     *
+     * @return empty if no rule matches
+     */
+    public List<BarcodeParseResult> parse(String barcode, List<BarcodeParseRuleDTO> parseRules) {
+        UnionBarcode unionBarcode = new UnionBarcode();
+        CompiledRuleSet ruleSet = getRuleSet(parseRules);
+        return adaptiveDispatch ? ruleSet.parseAdaptive(barcode, unionBarcode) : ruleSet.parseInOrder(barcode, unionBarcode);
+    }
+
+    private CompiledRuleSet getRuleSet(List<BarcodeParseRuleDTO> parseRules) {
+        CompiledRuleSet[] current = ruleSets;
+        for (CompiledRuleSet ruleSet : current) {
+            if (ruleSet.isCompiledFrom(parseRules)) {
+                return ruleSet;
+            }
+        }
+
+        CompiledRuleSet ruleSet = new CompiledRuleSet(parseRules.stream().map(this::compile).toArray(CompiledRule[]::new));
+        CompiledRuleSet[] updated = new CompiledRuleSet[Math.min(current.length + 1, MAX_RULE_SETS)];
+        updated[0] = ruleSet;
+        System.arraycopy(current, 0, updated, 1, updated.length - 1);
+        ruleSets = updated;
+        log.info("compile barcode parse rule set, rules: {}, cached rule sets: {}", parseRules.size(), updated.length);
+        return ruleSet;
+    }
+
+    private CompiledRule compile(BarcodeParseRuleDTO parseRule) {
+        String regex = parseRule.getRegularExpression();
+        Pattern pattern = null;
+        RuntimeException invalid = null;
+        try {
+            pattern = patterns.get(regex);
+            if (pattern == null) {
+                if (patterns.size() >= MAX_PATTERNS) {
+                    patterns.clear();
+                }
+                pattern = patterns.computeIfAbsent(regex, Pattern::compile);
+            }
+        } catch (RuntimeException e) {
+            // 和逐条编译时一样，轮到这条规则时再抛出
+            invalid = e;
+        }
+        return new CompiledRule(parseRule, pattern, invalid);
+    }
+
+    private static class CompiledRuleSet {
+        private final CompiledRule[] rules;
+
+        // shape * rules + rule index >>> hits
+        private final AtomicIntegerArray hits;
+        // shape >>> index of the rule hit most, NO_MATCH if none
+        private final AtomicIntegerArray hottestRules = new AtomicIntegerArray(SHAPES);
+        // barcode >>> index of the first matching rule, NO_MATCH if none
+        private final Map<String, Integer> rememberedRules = new ConcurrentHashMap<>();
+
+        private CompiledRuleSet(CompiledRule[] rules) {
+            this.rules = rules;
+            this.hits = new AtomicIntegerArray(SHAPES * rules.length);
+            for (int shape = 0; shape < SHAPES; shape++) {
+                hottestRules.set(shape, NO_MATCH);
+            }
+        }
+
+        private List<BarcodeParseResult> parseInOrder(String barcode, UnionBarcode unionBarcode) {
+            for (CompiledRule rule : rules) {
+                List<BarcodeParseResult> results = rule.parse(barcode, unionBarcode);
+                if (!results.isEmpty()) {
+                    return results;
+                }
+            }
+            return new ArrayList<>();
+        }
+
+        private List<BarcodeParseResult> parseAdaptive(String barcode, UnionBarcode unionBarcode) {
+            Integer rememberedRule = barcode == null ? null : rememberedRules.get(barcode);
+            if (rememberedRule != null) {
+                if (rememberedRule == NO_MATCH) {
+                    return new ArrayList<>();
+                }
+                return rules[rememberedRule].parse(barcode, unionBarcode);
+            }
+
+            int shape = shape(barcode);
+            int hottestRule = hottestRules.get(shape);
+            if (hottestRule != NO_MATCH) {
+                List<BarcodeParseResult> results = rules[hottestRule].parse(barcode, unionBarcode);
+                if (!results.isEmpty()) {
+                    // 按配置顺序确认前面的规则都不匹配，结果和逐条匹配一致
+                    for (int i = 0; i < hottestRule; i++) {
+                        List<BarcodeParseResult> earlierResults = rules[i].parse(barcode, unionBarcode);
+                        if (!earlierResults.isEmpty()) {
+                            return matched(barcode, shape, i, earlierResults);
+                        }
+                    }
+                    return matched(barcode, shape, hottestRule, results);
+                }
+            }
+
+            for (int i = 0; i < rules.length; i++) {
+                if (i == hottestRule) {
+                    continue;
+                }
+                List<BarcodeParseResult> results = rules[i].parse(barcode, unionBarcode);
+                if (!results.isEmpty()) {
+                    return matched(barcode, shape, i, results);
+                }
+            }
+            remember(barcode, NO_MATCH);
+            return new ArrayList<>();
+        }
+
+        private List<BarcodeParseResult> matched(String barcode, int shape, int ruleIndex, List<BarcodeParseResult> results) {
+            remember(barcode, ruleIndex);
+
+            int ruleHits = hits.incrementAndGet(shape * rules.length + ruleIndex);
+            int hottestRule = hottestRules.get(shape);
+            if (hottestRule != ruleIndex
+                    && (hottestRule == NO_MATCH || ruleHits > hits.get(shape * rules.length + hottestRule))) {
+                hottestRules.compareAndSet(shape, hottestRule, ruleIndex);
+            }
+            if (ruleHits >= HIT_DECAY_THRESHOLD) {
+                for (int i = 0; i < rules.length; i++) {
+                    int index = shape * rules.length + i;
+                    hits.set(index, hits.get(index) / 2);
+                }
+            }
+            return results;
+        }
+
+        private void remember(String barcode, int ruleIndex) {
+            if (barcode == null) {
+                return;
+            }
+            if (rememberedRules.size() >= MAX_REMEMBERED_BARCODES) {
+                rememberedRules.clear();
+            }
+            rememberedRules.put(barcode, ruleIndex);
+        }
+
+        private static int shape(String barcode) {
+            if (barcode == null || barcode.isEmpty()) {
+                return 0;
+            }
+            char first = barcode.charAt(0);
+            int prefixClass = first >= '0' && first <= '9' ? 1 : Character.isLetter(first) ? 2 : 3;
+            return Math.min(barcode.length(), SHAPE_MAX_LENGTH) * SHAPE_PREFIX_CLASSES + prefixClass;
+        }
+
+        private boolean isCompiledFrom(List<BarcodeParseRuleDTO> parseRules) {
+            if (parseRules.size() != rules.length) {
+                return false;
+            }
+            for (int i = 0; i < rules.length; i++) {
+                if (!rules[i].isCompiledFrom(parseRules.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class CompiledRule {
+        private final String regularExpression;
+        private final String unionStr;
+        private final UnionLocationEnum unionLocation;
+        private final List<String> resultFields;
+        private final RuntimeException invalid;
+        private final Pattern pattern;
+        private final String literalPrefix;
+        private final int minLength;
+        private final int maxInputLength;
+
+        private CompiledRule(BarcodeParseRuleDTO parseRule, Pattern pattern, RuntimeException invalid) {
+            this.regularExpression = parseRule.getRegularExpression();
+            this.unionStr = parseRule.getUnionStr();
+            this.unionLocation = parseRule.getUnionLocation();
+            this.resultFields = Collections.unmodifiableList(new ArrayList<>(parseRule.getResultFields()));
+            this.invalid = invalid;
+            this.pattern = pattern;
+            this.literalPrefix = pattern == null ? "" : RegexPrefilter.literalPrefix(regularExpression);
+            this.minLength = pattern == null ? 0 : RegexPrefilter.minLength(regularExpression);
+            this.maxInputLength = pattern == null ? -1 : RegexPrefilter.maxInputLength(regularExpression);
+        }
+
+        private boolean isCompiledFrom(BarcodeParseRuleDTO parseRule) {
+            if (!Objects.equals(regularExpression, parseRule.getRegularExpression())
+                    || !Objects.equals(unionStr, parseRule.getUnionStr())
+                    || unionLocation != parseRule.getUnionLocation()) {
+                return false;
+            }
+            List<String> fields = parseRule.getResultFields();
+            if (fields.size() != resultFields.size()) {
+                return false;
+            }
+            for (int i = 0; i < resultFields.size(); i++) {
+                if (!Objects.equals(resultFields.get(i), fields.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private List<BarcodeParseResult> parse(String barcode, UnionBarcode unionBarcode) {
+            if (invalid != null) {
+                throw invalid;
+            }
+
+            // 和 StringUtils.join 一样，null 按空串拼接
+            if (unionLocation == UnionLocationEnum.LEFT) {
+                unionBarcode.set(unionStr, barcode);
+            } else {
+                unionBarcode.set(barcode, unionStr);
+            }
+            if (unionBarcode.length() < minLength || maxInputLength >= 0 && unionBarcode.length() > maxInputLength
+                    || !unionBarcode.startsWith(literalPrefix)) {
+                return Collections.emptyList();
+            }
+
+            Matcher matcher = pattern.matcher(unionBarcode);
+            try {
+                if (!matcher.find()) {
+                    return Collections.emptyList();
+                }
+                List<BarcodeParseResult> results = new ArrayList<>(resultFields.size());
+                for (int i = 0; i < resultFields.size(); i++) {
+                    results.add(BarcodeParseResult.builder().fieldName(resultFields.get(i)).fieldValue(matcher.group(i + 1)).build());
+                }
+                return results;
+            } catch (Exception e) {
+                log.error("barcode rule parse error,regex={},parameter={}size={}", regularExpression, unionBarcode, resultFields.size(), e);
+                return Collections.emptyList();
+            }
+        }
+    }
+
+    /**
+     * The barcode joined with the union string, without copying either.
+     */
+    private static class UnionBarcode implements CharSequence {
+        private String left = "";
+        private String right = "";
+
+        private void set(String left, String right) {
+            this.left = left == null ? "" : left;
+            this.right = right == null ? "" : right;
+        }
+
+        private boolean startsWith(String prefix) {
+            if (prefix.length() > length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (charAt(i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int length() {
+            return left.length() + right.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return index < left.length() ? left.charAt(index) : right.charAt(index - left.length());
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (end <= left.length()) {
+                return left.substring(start, end);
+            }
+            if (start >= left.length()) {
+                return right.substring(start - left.length(), end - left.length());
+            }
+            return left.substring(start) + right.substring(0, end - left.length());
+        }
+
+        @Override
+        public String toString() {
+            return left + right;
+        }
+    }
+}
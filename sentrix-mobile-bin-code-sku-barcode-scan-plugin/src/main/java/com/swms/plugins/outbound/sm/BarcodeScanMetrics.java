@@ -0,0 +1,74 @@
+package com.swms.plugins.outbound.sm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency of each scan validation branch and the remote calls made by scans.
+ * <p>
+ * Meters are registered once per outcome and api and kept, recording does not build or look up meters in the
+ * registry.
+ */
+public class BarcodeScanMetrics {
+
+    public static final String OUTCOME_NON_SKU_SCAN = "non_sku_scan";
+    public static final String OUTCOME_NO_USER = "no_user";
+    public static final String OUTCOME_ROBOT_AREA = "robot_area";
+    public static final String OUTCOME_VALIDATED = "validated";
+    public static final String OUTCOME_REJECTED = "rejected";
+    public static final String OUTCOME_ERROR = "error";
+
+    public static final String API_USER = "user";
+    public static final String API_PICKING_ORDER = "picking_order";
+    public static final String API_SKU = "sku";
+
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary remoteCallsPerScan;
+    private final Map<String, Timer> scanTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> remoteCallCounters = new ConcurrentHashMap<>();
+
+    // 当前线程正在处理的扫描已经发起的远程调用次数
+    private final ThreadLocal<int[]> scanRemoteCalls = ThreadLocal.withInitial(() -> new int[1]);
+
+    public BarcodeScanMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.remoteCallsPerScan = DistributionSummary.builder("sentrix.barcode.scan.remote.calls")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the start time of the scan, to pass to {@link #endScan(String, long)}
+     */
+    public long startScan() {
+        scanRemoteCalls.get()[0] = 0;
+        return System.nanoTime();
+    }
+
+    public void endScan(String outcome, long startNanos) {
+        scanTimers.computeIfAbsent(outcome, k -> Timer.builder("sentrix.barcode.scan.duration")
+                        .tag("outcome", k)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        remoteCallsPerScan.record(scanRemoteCalls.get()[0]);
+    }
+
+    /**
+     * Run a remote call, counting it for the api and for the current scan.
+     */
+    public <T> T remoteCall(String api, Supplier<T> call) {
+        scanRemoteCalls.get()[0]++;
+        remoteCallCounters.computeIfAbsent(api, k -> Counter.builder("sentrix.barcode.scan.remote.call")
+                        .tag("api", k)
+                        .register(meterRegistry))
+                .increment();
+        return call.get();
+    }
+}
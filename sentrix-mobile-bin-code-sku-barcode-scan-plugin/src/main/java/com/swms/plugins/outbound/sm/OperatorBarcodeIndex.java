@@ -0,0 +1,202 @@
+package com.swms.plugins.outbound.sm;
+
+import com.swms.mdm.api.main.data.dto.SkuMainDataDTO;
+import com.swms.user.api.dto.UserDTO;
+import com.swms.wms.api.outbound.dto.PickingOrderDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In memory barcodes of the skus of each operator's uncompleted picking orders, by user id, and the user ids by
+ * username.
+ * <p>
+ * Only a scanned barcode found among an operator's barcodes is answered from memory, for at most {@code ttlMillis}
+ * after they were loaded. A barcode that is not among them, or an operator without picking orders, is always answered
+ * by a fresh load, so a scan is only rejected, or let through as a robot area scan, after a load confirmed it. To
+ * bound the loads of an operator repeating a wrong scan, the same barcode of the same operator is answered from the
+ * confirming load for {@code missRefreshIntervalMillis}.
+ * <p>
+ * A reload queries the picking orders again, but the barcodes of a sku rarely change and are kept for
+ * {@code skuBarcodesTtlMillis}, much longer than the barcodes of an operator: a reload only queries the skus whose
+ * barcodes are not loaded yet or have expired.
+ */
+@Slf4j
+public class OperatorBarcodeIndex {
+
+    // sku 条码缓存和未命中记录超过该数量时清理过期的条目
+    private static final int SKU_BARCODES_CLEANUP_SIZE = 50000;
+    private static final int CONFIRMED_MISSES_CLEANUP_SIZE = 10000;
+
+    private final Function<String, UserDTO> userLoader;
+    private final Function<Long, List<PickingOrderDTO>> pickingOrderLoader;
+    private final Function<Set<Long>, List<SkuMainDataDTO>> skuLoader;
+    private final long ttlMillis;
+    private final long skuBarcodesTtlMillis;
+    private final long missRefreshIntervalMillis;
+    private final long userIdTtlMillis;
+
+    // username >>> user id
+    private final Map<String, CachedUserId> userIds = new ConcurrentHashMap<>();
+    // user id >>> barcodes
+    private final Map<Long, OperatorBarcodes> operatorBarcodes = new ConcurrentHashMap<>();
+    // skuId >>> barcodes
+    private final Map<Long, CachedSkuBarcodes> skuBarcodes = new ConcurrentHashMap<>();
+    // user id + barcode >>> time of the load that confirmed the barcode is not among the operator's barcodes
+    private final Map<ConfirmedMissKey, Long> confirmedMisses = new ConcurrentHashMap<>();
+
+    /**
+     * @param userLoader         query a user by username
+     * @param pickingOrderLoader query the uncompleted picking orders received by a user id
+     * @param skuLoader          query skus by ids
+     */
+    public OperatorBarcodeIndex(Function<String, UserDTO> userLoader, Function<Long, List<PickingOrderDTO>> pickingOrderLoader,
+                                Function<Set<Long>, List<SkuMainDataDTO>> skuLoader,
+                                long ttlMillis, long skuBarcodesTtlMillis, long missRefreshIntervalMillis, long userIdTtlMillis) {
+        this.userLoader = userLoader;
+        this.pickingOrderLoader = pickingOrderLoader;
+        this.skuLoader = skuLoader;
+        this.ttlMillis = ttlMillis;
+        this.skuBarcodesTtlMillis = skuBarcodesTtlMillis;
+        this.missRefreshIntervalMillis = missRefreshIntervalMillis;
+        this.userIdTtlMillis = userIdTtlMillis;
+    }
+
+    /**
+     * @return null if there is no such user
+     */
+    public Long getUserId(String username) {
+        long now = System.currentTimeMillis();
+        CachedUserId cached = userIds.get(username);
+        if (cached != null && now - cached.loadedAt < userIdTtlMillis) {
+            return cached.userId;
+        }
+
+        UserDTO user = userLoader.apply(username);
+        if (user == null) {
+            userIds.remove(username);
+            return null;
+        }
+        userIds.put(username, new CachedUserId(user.getId(), now));
+        return user.getId();
+    }
+
+    /**
+     * Get the barcodes of an operator, reloading them unless they contain the scanned barcode and have not expired, or
+     * a recent load already confirmed the scanned barcode is not among them.
+     */
+    public OperatorBarcodes getBarcodes(Long userId, String scannedBarcode) {
+        long now = System.currentTimeMillis();
+        OperatorBarcodes barcodes = operatorBarcodes.get(userId);
+        ConfirmedMissKey missKey = new ConfirmedMissKey(userId, scannedBarcode);
+        if (barcodes != null && now - barcodes.loadedAt < ttlMillis) {
+            if (barcodes.validates(scannedBarcode)) {
+                return barcodes;
+            }
+            Long missConfirmedAt = confirmedMisses.get(missKey);
+            if (missConfirmedAt != null && now - missConfirmedAt < missRefreshIntervalMillis) {
+                return barcodes;
+            }
+        }
+
+        barcodes = load(userId, now);
+        operatorBarcodes.put(userId, barcodes);
+        if (barcodes.validates(scannedBarcode)) {
+            confirmedMisses.remove(missKey);
+        } else {
+            confirmedMisses.put(missKey, now);
+            cleanupConfirmedMisses(now);
+        }
+        return barcodes;
+    }
+
+    private OperatorBarcodes load(Long userId, long now) {
+        List<PickingOrderDTO> pickingOrderDTOS = pickingOrderLoader.apply(userId);
+        if (CollectionUtils.isEmpty(pickingOrderDTOS)) {
+            return new OperatorBarcodes(false, Collections.emptySet(), now);
+        }
+
+        Set<Long> skuIds = pickingOrderDTOS.stream().flatMap(v -> v.getDetails().stream()
+            .map(PickingOrderDTO.PickingOrderDetailDTO::getSkuId)).collect(Collectors.toSet());
+
+        // 只查询未加载或已过期的 sku
+        Set<Long> missingSkuIds = skuIds.stream().filter(skuId -> {
+            CachedSkuBarcodes cached = skuBarcodes.get(skuId);
+            return cached == null || now - cached.loadedAt >= skuBarcodesTtlMillis;
+        }).collect(Collectors.toSet());
+        if (!missingSkuIds.isEmpty()) {
+            List<SkuMainDataDTO> skuMainDataDTOS = skuLoader.apply(missingSkuIds);
+            skuMainDataDTOS.forEach(sku -> skuBarcodes.put(sku.getId(), new CachedSkuBarcodes(
+                    sku.getSkuBarcode() == null || sku.getSkuBarcode().getBarcodes() == null
+                            ? Collections.emptySet() : new HashSet<>(sku.getSkuBarcode().getBarcodes()), now)));
+            cleanupSkuBarcodes(now);
+        }
+
+        Set<String> barcodes = new HashSet<>();
+        skuIds.forEach(skuId -> {
+            CachedSkuBarcodes cached = skuBarcodes.get(skuId);
+            if (cached != null) {
+                barcodes.addAll(cached.barcodes);
+            }
+        });
+        log.debug("load operator barcodes, user id: {}, skus: {}, queried skus: {}, barcodes: {}",
+                userId, skuIds.size(), missingSkuIds.size(), barcodes.size());
+        return new OperatorBarcodes(true, barcodes, now);
+    }
+
+    private void cleanupSkuBarcodes(long now) {
+        if (skuBarcodes.size() > SKU_BARCODES_CLEANUP_SIZE) {
+            skuBarcodes.values().removeIf(cached -> now - cached.loadedAt >= skuBarcodesTtlMillis);
+        }
+    }
+
+    private void cleanupConfirmedMisses(long now) {
+        if (confirmedMisses.size() > CONFIRMED_MISSES_CLEANUP_SIZE) {
+            confirmedMisses.values().removeIf(confirmedAt -> now - confirmedAt >= missRefreshIntervalMillis);
+        }
+    }
+
+    public static class OperatorBarcodes {
+        private final boolean hasPickingOrders;
+        private final Set<String> barcodes;
+        private final long loadedAt;
+
+        private OperatorBarcodes(boolean hasPickingOrders, Set<String> barcodes, long loadedAt) {
+            this.hasPickingOrders = hasPickingOrders;
+            this.barcodes = barcodes;
+            this.loadedAt = loadedAt;
+        }
+
+        /**
+         * @return false if the operator has no uncompleted picking order
+         */
+        public boolean hasPickingOrders() {
+            return hasPickingOrders;
+        }
+
+        public boolean contains(String barcode) {
+            return barcodes.contains(barcode);
+        }
+
+        private boolean validates(String barcode) {
+            return hasPickingOrders && barcodes.contains(barcode);
+        }
+    }
+
+    private record ConfirmedMissKey(Long userId, String barcode) {
+    }
+
+    private record CachedUserId(Long userId, long loadedAt) {
+    }
+
+    private record CachedSkuBarcodes(Set<String> barcodes, long loadedAt) {
+    }
+}
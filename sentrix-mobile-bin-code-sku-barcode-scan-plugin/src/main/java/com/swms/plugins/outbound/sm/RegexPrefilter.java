@@ -0,0 +1,334 @@
+package com.swms.plugins.outbound.sm;
+
+/**
+ * Cheap facts about a regular expression that let a parse rule be skipped before its matcher runs.
+ * <p>
+ * All facts are conservative: whenever the expression uses something not understood here, no prefix, a minimum
+ * length of 0 and no maximum length are returned, which never skips a rule that could match.
+ */
+public final class RegexPrefilter {
+
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private RegexPrefilter() {
+    }
+
+    /**
+     * The literal text every match starts with at the beginning of the input, for expressions anchored by {@code ^}.
+     *
+     * @return empty if there is none
+     */
+    public static String literalPrefix(String regex) {
+        // 有分支时无法保证前缀
+        if (regex == null || !regex.startsWith("^") || regex.indexOf('|') >= 0) {
+            return "";
+        }
+
+        StringBuilder prefix = new StringBuilder();
+        int pos = 1;
+        while (pos < regex.length()) {
+            char c = regex.charAt(pos);
+            if (c == '\\' && pos + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(pos + 1))) {
+                prefix.append(regex.charAt(pos + 1));
+                pos += 2;
+            } else if (".[]{}()*+?^$|\\".indexOf(c) < 0) {
+                prefix.append(c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        // 最后一个字符可以出现 0 次
+        if (pos < regex.length() && prefix.length() > 0 && "?*{".indexOf(regex.charAt(pos)) >= 0) {
+            prefix.setLength(prefix.length() - 1);
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * A lower bound of the length of any match.
+     */
+    public static int minLength(String regex) {
+        long[] range = lengthRange(regex);
+        return range == null ? 0 : (int) Math.min(range[0], Integer.MAX_VALUE);
+    }
+
+    /**
+     * An upper bound of the length of the whole input for expressions anchored by {@code ^} and {@code $}.
+     *
+     * @return -1 if there is none
+     */
+    public static int maxInputLength(String regex) {
+        if (regex == null || !regex.startsWith("^") || !regex.endsWith("$") || regex.endsWith("\\$")) {
+            return -1;
+        }
+        long[] range = lengthRange(regex);
+        if (range == null || range[1] == UNBOUNDED) {
+            return -1;
+        }
+        // $ 也匹配末尾换行符（最长 \r\n）之前的位置
+        return (int) Math.min(range[1] + 2, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return min and max length of any match, null if not understood
+     */
+    private static long[] lengthRange(String regex) {
+        if (regex == null || regex.indexOf('|') >= 0) {
+            return null;
+        }
+        try {
+            Parser parser = new Parser(regex);
+            long[] range = parser.sequence();
+            return parser.pos == regex.length() ? range : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static long add(long a, long b) {
+        return a == UNBOUNDED || b == UNBOUNDED ? UNBOUNDED : Math.min(a + b, UNBOUNDED - 1);
+    }
+
+    private static long multiply(long length, long times) {
+        if (length == 0 || times == 0) {
+            return 0;
+        }
+        if (length == UNBOUNDED || times == UNBOUNDED) {
+            return UNBOUNDED;
+        }
+        return length > (UNBOUNDED - 1) / times ? UNBOUNDED - 1 : length * times;
+    }
+
+    private static class Parser {
+        private final String regex;
+        private int pos;
+
+        private Parser(String regex) {
+            this.regex = regex;
+        }
+
+        private long[] sequence() {
+            long min = 0;
+            long max = 0;
+            while (pos < regex.length() && regex.charAt(pos) != ')') {
+                long[] atomRange = quantified(atom());
+                min = add(min, atomRange[0]);
+                max = add(max, atomRange[1]);
+            }
+            return new long[]{min, max};
+        }
+
+        private long[] atom() {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case '(':
+                    return group();
+                case '[':
+                    skipCharClass();
+                    // 字符类可能匹配增补字符
+                    return new long[]{1, 2};
+                case '\\':
+                    return escape();
+                case '^':
+                case '$':
+                    return new long[]{0, 0};
+                case '.':
+                    return new long[]{1, 2};
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                case ')':
+                case ']':
+                case '}':
+                    throw new IllegalArgumentException("unsupported regex at " + (pos - 1));
+                default:
+                    if (Character.isSurrogate(c)) {
+                        throw new IllegalArgumentException("unsupported regex at " + (pos - 1));
+                    }
+                    return new long[]{1, 1};
+            }
+        }
+
+        private long[] group() {
+            boolean zeroWidth = false;
+            if (regex.startsWith("?", pos)) {
+                if (regex.startsWith("?:", pos)) {
+                    pos += 2;
+                } else if (regex.startsWith("?=", pos) || regex.startsWith("?!", pos)) {
+                    pos += 2;
+                    zeroWidth = true;
+                } else if (regex.startsWith("?<=", pos) || regex.startsWith("?<!", pos)) {
+                    pos += 3;
+                    zeroWidth = true;
+                } else if (regex.startsWith("?<", pos)) {
+                    pos = regex.indexOf('>', pos) + 1;
+                    if (pos == 0) {
+                        throw new IllegalArgumentException("unclosed group name");
+                    }
+                } else {
+                    // 内联标志等
+                    throw new IllegalArgumentException("unsupported group at " + pos);
+                }
+            }
+
+            long[] range = sequence();
+            if (pos >= regex.length()) {
+                throw new IllegalArgumentException("unclosed group");
+            }
+            pos++;
+            return zeroWidth ? new long[]{0, 0} : range;
+        }
+
+        private void skipCharClass() {
+            int depth = 1;
+            if (regex.startsWith("^", pos)) {
+                pos++;
+            }
+            // 紧跟的 ] 是普通字符
+            if (regex.startsWith("]", pos)) {
+                pos++;
+            }
+            while (depth > 0) {
+                char c = regex.charAt(pos++);
+                if (c == '\\') {
+                    pos++;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                }
+            }
+        }
+
+        private long[] escape() {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case 'b':
+                case 'B':
+                    // \b{g} 字素边界
+                    if (regex.startsWith("{", pos)) {
+                        throw new IllegalArgumentException("unsupported escape at " + (pos - 2));
+                    }
+                    return new long[]{0, 0};
+                case 'A':
+                case 'z':
+                case 'Z':
+                case 'G':
+                    return new long[]{0, 0};
+                case 'k':
+                    skipBraced('<', '>');
+                    return new long[]{0, UNBOUNDED};
+                case 'Q': {
+                    // 没有 \E 时引用到末尾，结尾的 $ 也是普通字符，不能当作锚点
+                    int end = regex.indexOf("\\E", pos);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("unterminated quote at " + (pos - 2));
+                    }
+                    long length = end - pos;
+                    pos = end + 2;
+                    return new long[]{length, length};
+                }
+                case 'p':
+                case 'P':
+                case 'N':
+                    if (!skipBraced('{', '}')) {
+                        pos++;
+                    }
+                    return new long[]{1, 2};
+                case 'x':
+                    if (!skipBraced('{', '}')) {
+                        pos += 2;
+                    }
+                    return new long[]{1, 2};
+                case 'u':
+                    pos += 4;
+                    return new long[]{1, 1};
+                case 'c':
+                    pos++;
+                    return new long[]{1, 1};
+                case 'R':
+                    return new long[]{1, 2};
+                case 'X':
+                    return new long[]{1, UNBOUNDED};
+                case 'd':
+                case 'w':
+                case 's':
+                case 'h':
+                case 'v':
+                case 't':
+                case 'n':
+                case 'r':
+                case 'f':
+                case 'a':
+                case 'e':
+                    return new long[]{1, 1};
+                case 'D':
+                case 'W':
+                case 'S':
+                case 'H':
+                case 'V':
+                    // 取反的字符类可能匹配增补字符
+                    return new long[]{1, 2};
+                default:
+                    // 转义的元字符；八进制转义、反向引用等的长度取决于后面的数字，不做判断
+                    if (Character.isLetterOrDigit(c) || Character.isSurrogate(c)) {
+                        throw new IllegalArgumentException("unsupported escape at " + (pos - 2));
+                    }
+                    return new long[]{1, 1};
+            }
+        }
+
+        private boolean skipBraced(char open, char close) {
+            if (!regex.startsWith(String.valueOf(open), pos)) {
+                return false;
+            }
+            int end = regex.indexOf(close, pos);
+            if (end < 0) {
+                throw new IllegalArgumentException("unclosed " + open);
+            }
+            pos = end + 1;
+            return true;
+        }
+
+        private long[] quantified(long[] atomRange) {
+            if (pos >= regex.length()) {
+                return atomRange;
+            }
+            long[] range;
+            char c = regex.charAt(pos);
+            if (c == '?') {
+                pos++;
+                range = new long[]{0, atomRange[1]};
+            } else if (c == '*') {
+                pos++;
+                range = new long[]{0, multiply(atomRange[1], UNBOUNDED)};
+            } else if (c == '+') {
+                pos++;
+                range = new long[]{atomRange[0], multiply(atomRange[1], UNBOUNDED)};
+            } else if (c == '{') {
+                int end = regex.indexOf('}', pos);
+                if (end < 0) {
+                    throw new IllegalArgumentException("unclosed quantifier");
+                }
+                String bounds = regex.substring(pos + 1, end);
+                int comma = bounds.indexOf(',');
+                long min = Long.parseLong((comma < 0 ? bounds : bounds.substring(0, comma)).trim());
+                long max = comma < 0 ? min
+                        : bounds.substring(comma + 1).isBlank() ? UNBOUNDED : Long.parseLong(bounds.substring(comma + 1).trim());
+                pos = end + 1;
+                range = new long[]{multiply(atomRange[0], min), multiply(atomRange[1], max)};
+            } else {
+                return atomRange;
+            }
+
+            // 非贪婪和占有量词
+            if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+                pos++;
+            }
+            return range;
+        }
+    }
+}
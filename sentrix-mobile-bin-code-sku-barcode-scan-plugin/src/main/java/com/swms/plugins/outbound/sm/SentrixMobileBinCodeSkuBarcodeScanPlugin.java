@@ -4,136 +4,107 @@ import com.swms.common.utils.exception.WmsException;
 import com.swms.common.utils.exception.code_enum.OperationTaskErrorDescEnum;
 import com.swms.common.utils.user.UserContext;
 import com.swms.mdm.api.config.constants.ExecuteTimeEnum;
-import com.swms.mdm.api.config.constants.UnionLocationEnum;
 import com.swms.mdm.api.config.dto.BarcodeParseRequestDTO;
 import com.swms.mdm.api.config.dto.BarcodeParseResult;
 import com.swms.mdm.api.config.dto.BarcodeParseRuleDTO;
 import com.swms.mdm.api.main.data.ISkuMainDataApi;
-import com.swms.mdm.api.main.data.dto.SkuMainDataDTO;
 import com.swms.plugin.extend.extensions.OperationContext;
 import com.swms.plugin.extend.mdm.config.IBarcodeParsePlugin;
 import com.swms.user.api.UserApi;
-import com.swms.user.api.dto.UserDTO;
 import com.swms.wms.api.outbound.IPickingOrderApi;
-import com.swms.wms.api.outbound.dto.PickingOrderDTO;
+import io.micrometer.core.instrument.Metrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.pf4j.Extension;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Extension
 @RequiredArgsConstructor
 public class SentrixMobileBinCodeSkuBarcodeScanPlugin implements IBarcodeParsePlugin {
 
+    // 命中的作业员条码的最长使用时间，同一作业员重复扫描同一未命中条码时重新加载的最小间隔，以及用户名对应用户 id 的过期时间
+    private static final long OPERATOR_BARCODES_TTL_MILLIS = 3_000;
+    private static final long OPERATOR_BARCODES_MISS_REFRESH_INTERVAL_MILLIS = 2_000;
+    private static final long USER_ID_TTL_MILLIS = 10 * 60 * 1000L;
+    // sku 条码很少变化，缓存时间远长于作业员条码，作业员条码重新加载时只重新查询拣货单
+    private static final long SKU_BARCODES_TTL_MILLIS = 30 * 60 * 1000L;
+
+    // 条码解析规则按命中率自适应调整尝试顺序，结果仍和配置顺序一致
+    private static final boolean ADAPTIVE_RULE_DISPATCH = Boolean.parseBoolean(
+            System.getProperty("sentrix.bin-code.adaptive-barcode-rule-dispatch", "true"));
+
     private final UserApi userApi;
     private final IPickingOrderApi pickingOrderApi;
     private final ISkuMainDataApi skuMainDataApi;
 
+    private final BarcodeScanMetrics scanMetrics = new BarcodeScanMetrics(Metrics.globalRegistry);
+
+    private final BarcodeParseRuleEngine barcodeParseRuleEngine = new BarcodeParseRuleEngine(ADAPTIVE_RULE_DISPATCH);
+
+    private final OperatorBarcodeIndex operatorBarcodeIndex = new OperatorBarcodeIndex(
+            username -> scanMetrics.remoteCall(BarcodeScanMetrics.API_USER, () -> userApi.getByUsername(username)),
+            userId -> scanMetrics.remoteCall(BarcodeScanMetrics.API_PICKING_ORDER, () -> pickingOrderApi.findUncompletedByReceivedUserId(userId)),
+            skuIds -> scanMetrics.remoteCall(BarcodeScanMetrics.API_SKU, () -> skuMainDataApi.getByIds(skuIds)),
+            OPERATOR_BARCODES_TTL_MILLIS, SKU_BARCODES_TTL_MILLIS, OPERATOR_BARCODES_MISS_REFRESH_INTERVAL_MILLIS, USER_ID_TTL_MILLIS);
+
     @Override
     public List<BarcodeParseResult> doOperation(OperationContext<BarcodeParsePluginRequest> operationContext) {
         BarcodeParsePluginRequest request = operationContext.getOperationObject();
         BarcodeParseRequestDTO barcodeParseRequestDTO = request.getBarcodeParseRequestDTO();
         List<BarcodeParseRuleDTO> barcodeParseRules = request.getBarcodeParseRules();
 
+        long startNanos = scanMetrics.startScan();
+        String outcome = BarcodeScanMetrics.OUTCOME_ERROR;
+        try {
+            outcome = validateScan(barcodeParseRequestDTO);
+            if (BarcodeScanMetrics.OUTCOME_REJECTED.equals(outcome)) {
+                throw WmsException.throwWmsException(OperationTaskErrorDescEnum.INCRRECT_BAR_CODE);
+            }
+            return defaultParse(barcodeParseRequestDTO, barcodeParseRules);
+        } finally {
+            scanMetrics.endScan(outcome, startNanos);
+        }
+    }
+
+    /**
+     * @return the scan outcome, {@link BarcodeScanMetrics#OUTCOME_REJECTED} if the barcode is not in the uncompleted
+     * picking orders of the current user
+     */
+    private String validateScan(BarcodeParseRequestDTO barcodeParseRequestDTO) {
         // 如果扫描的不是 SKU，直接返回
         if (!ExecuteTimeEnum.SCAN_SKU.equals(barcodeParseRequestDTO.getExecuteTime())) {
-            return defaultParse(barcodeParseRequestDTO, barcodeParseRules);
+            return BarcodeScanMetrics.OUTCOME_NON_SKU_SCAN;
         }
 
         String currentUser = UserContext.getCurrentUser();
         if (currentUser == null) {
             log.warn("cannot find current user");
-            return defaultParse(barcodeParseRequestDTO, barcodeParseRules);
+            return BarcodeScanMetrics.OUTCOME_NO_USER;
         }
-        UserDTO user = userApi.getByUsername(currentUser);
-        if (user == null) {
+        Long userId = operatorBarcodeIndex.getUserId(currentUser);
+        if (userId == null) {
             log.warn("cannot find current user by username : {}", currentUser);
-            return defaultParse(barcodeParseRequestDTO, barcodeParseRules);
+            return BarcodeScanMetrics.OUTCOME_NO_USER;
         }
 
-        List<PickingOrderDTO> pickingOrderDTOS = pickingOrderApi.findUncompletedByReceivedUserId(user.getId());
-        if (CollectionUtils.isEmpty(pickingOrderDTOS)) {
+        OperatorBarcodeIndex.OperatorBarcodes operatorBarcodes = operatorBarcodeIndex.getBarcodes(userId, barcodeParseRequestDTO.getBarcode());
+        if (!operatorBarcodes.hasPickingOrders()) {
             log.info("maybe robot area picking order");
-            return defaultParse(barcodeParseRequestDTO, barcodeParseRules);
+            return BarcodeScanMetrics.OUTCOME_ROBOT_AREA;
         }
-        Set<Long> skuIds = pickingOrderDTOS.stream().flatMap(v -> v.getDetails().stream()
-            .map(PickingOrderDTO.PickingOrderDetailDTO::getSkuId)).collect(Collectors.toSet());
-
-        List<SkuMainDataDTO> skuMainDataDTOS = skuMainDataApi.getByIds(skuIds);
-        Set<String> barcodes = skuMainDataDTOS.stream()
-            .flatMap(v -> v.getSkuBarcode().getBarcodes().stream()).collect(Collectors.toSet());
-        if (CollectionUtils.containsAny(barcodes, barcodeParseRequestDTO.getBarcode())) {
-            return defaultParse(barcodeParseRequestDTO, barcodeParseRules);
+        if (operatorBarcodes.contains(barcodeParseRequestDTO.getBarcode())) {
+            return BarcodeScanMetrics.OUTCOME_VALIDATED;
         }
-
-        throw WmsException.throwWmsException(OperationTaskErrorDescEnum.INCRRECT_BAR_CODE);
+        return BarcodeScanMetrics.OUTCOME_REJECTED;
     }
 
     private List<BarcodeParseResult> defaultParse(BarcodeParseRequestDTO barcodeParseRequestDTO, List<BarcodeParseRuleDTO> barcodeParseRules) {
-        for (BarcodeParseRuleDTO parseRule : barcodeParseRules) {
-            List<BarcodeParseResult> results = parse(barcodeParseRequestDTO.getBarcode(), parseRule);
-            if (CollectionUtils.isNotEmpty(results)) {
-                return results;
-            }
-        }
-        return new ArrayList<>();
+        return barcodeParseRuleEngine.parse(barcodeParseRequestDTO.getBarcode(), barcodeParseRules);
     }
 
     public List<BarcodeParseResult> parse(String barcode, BarcodeParseRuleDTO parseRule) {
-        String unionBarcode = union(barcode, parseRule);
-        List<String> compileResult = compile(unionBarcode, parseRule);
-        return buildResult(compileResult, parseRule);
-    }
-
-    private String union(String barcode, BarcodeParseRuleDTO parseRule) {
-        String unionStr = parseRule.getUnionStr();
-        if (parseRule.getUnionLocation() == UnionLocationEnum.LEFT) {
-            return StringUtils.join(unionStr, barcode);
-        } else {
-            return StringUtils.join(barcode, unionStr);
-        }
-    }
-
-    private List<String> compile(String unionBarcode, BarcodeParseRuleDTO parseRule) {
-        Pattern pattern = Pattern.compile(parseRule.getRegularExpression());
-        Matcher matcher = pattern.matcher(unionBarcode);
-        List<String> result = new ArrayList<>(parseRule.getResultFields().size());
-        if (matcher.find()) {
-            try {
-                for (int i = 1; i <= parseRule.getResultFields().size(); i++) {
-                    result.add(matcher.group(i));
-                }
-            } catch (Exception e) {
-                log.error("barcode rule parse error,regex={},parameter={}size={}", parseRule.getRegularExpression(), unionBarcode, parseRule.getResultFields().size(), e);
-            }
-        }
-        return result;
-    }
-
-    private List<BarcodeParseResult> buildResult(List<String> compileResult, BarcodeParseRuleDTO parseRule) {
-        if (CollectionUtils.isEmpty(compileResult)) {
-            return Collections.emptyList();
-        }
-        if (compileResult.size() != parseRule.getResultFields().size()) {
-            return Collections.emptyList();
-        }
-
-        List<BarcodeParseResult> barcodeParseResults = new ArrayList<>(parseRule.getResultFields().size());
-        for (int i = 0; i < parseRule.getResultFields().size(); i++) {
-            String field = parseRule.getResultFields().get(i);
-            String result = compileResult.get(i);
-            barcodeParseResults.add(BarcodeParseResult.builder().fieldName(field).fieldValue(result).build());
-        }
-        return barcodeParseResults;
+        return barcodeParseRuleEngine.parse(barcode, List.of(parseRule));
     }
 }
@@ -0,0 +1,105 @@
+package com.swms.plugins.outbound.sm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegexPrefilterTest {
+
+    private static final String SMILE = "😀";
+
+    // regex, input
+    private static final String[][] CASES = {
+            {"^(\\d{13})$", "1234567890123"},
+            {"^(\\d{13})$", "1234567890123\n"},
+            {"^(\\d{13})$", "1234567890123\r\n"},
+            {"^AB(\\d+)$", "AB1"},
+            {"^AB?(\\d+)$", "A1"},
+            {"^AB*C", "AC"},
+            {"^AB{0}C", "AC"},
+            {"^A\\.B", "A.B"},
+            {"(\\d{4})-(\\d{2})", "x2024-01y"},
+            {"^\\0101(\\d{13})$", "A1234567890123"},
+            {"^\\0101(\\d{13})$", "A1234567890123\n"},
+            {"^\\01011(\\d{3})$", "A1123"},
+            {"^(a)(b)(c)(d)(e)(f)(g)(h)(i)(j)\\10$", "abcdefghijj"},
+            {"^(a)(b)(c)(d)(e)(f)(g)(h)(i)(j)\\11$", "abcdefghija1"},
+            {"^(\\w+)-\\1$", "ab-ab"},
+            {"^(?<code>\\d{2})\\k<code>$", "1212"},
+            {"^\\D{3}$", SMILE + SMILE + SMILE},
+            {"^\\W{2}$", SMILE + SMILE},
+            {"^\\S{2}$", SMILE + SMILE},
+            {"^\\H{2}$", SMILE + SMILE},
+            {"^\\V{2}$", SMILE + SMILE},
+            {"^.{2}$", SMILE + SMILE},
+            {"^[^a]{2}$", SMILE + SMILE},
+            {"^\\p{So}$", SMILE},
+            {"^\\x{1F600}$", SMILE},
+            {"^\\x41\\u0042$", "AB"},
+            {"^\\QA.B\\E(\\d)$", "A.B1"},
+            {"^\\Qa$", "a$xyz"},
+            {"^\\Qa$\\E$", "a$"},
+            {"^\\t\\d$", "\t1"},
+            {"^\\cA$", "\u0001"},
+            {"^\\R$", "\r\n"},
+            {"^\\X$", "é"},
+            {"^(?:AB){2,3}$", "ABABAB"},
+            {"^(?=A)\\w{3}$", "ABC"},
+            {"^(?i)ab$", "AB"},
+            {"^a\\b{g}b$", "ab"},
+            {"^(\\d{2,})(?!x)", "123"},
+            {"^A(\\d{2}?)", "A12"},
+            {"^A(\\d++)$", "A12"},
+            {"a|bc", "bc"},
+            {"^$", ""},
+    };
+
+    @Test
+    void prefilterNeverRejectsAMatch() {
+        for (String[] testCase : CASES) {
+            String regex = testCase[0];
+            String input = testCase[1];
+            assertTrue(Pattern.compile(regex).matcher(input).find(), "case does not match: " + regex);
+            assertTrue(allows(regex, input), "prefilter rejects match, regex: " + regex + ", input length: " + input.length()
+                    + ", min length: " + RegexPrefilter.minLength(regex) + ", max input length: "
+                    + RegexPrefilter.maxInputLength(regex) + ", prefix: " + RegexPrefilter.literalPrefix(regex));
+        }
+    }
+
+    @Test
+    void plainExpressionsAreMeasured() {
+        assertEquals(13, RegexPrefilter.minLength("^(\\d{13})$"));
+        assertEquals(15, RegexPrefilter.maxInputLength("^(\\d{13})$"));
+        assertEquals("AB", RegexPrefilter.literalPrefix("^AB(\\d+)$"));
+        assertEquals(3, RegexPrefilter.minLength("^AB(\\d+)$"));
+        assertEquals(-1, RegexPrefilter.maxInputLength("^AB(\\d+)$"));
+        assertEquals("A", RegexPrefilter.literalPrefix("^AB?(\\d+)$"));
+        assertEquals(3, RegexPrefilter.minLength("^\\D{3}$"));
+        assertEquals(8, RegexPrefilter.maxInputLength("^\\D{3}$"));
+    }
+
+    @Test
+    void octalEscapesAndBackReferencesAreNotMeasured() {
+        assertEquals(0, RegexPrefilter.minLength("^\\0101(\\d{13})$"));
+        assertEquals(-1, RegexPrefilter.maxInputLength("^\\0101(\\d{13})$"));
+        assertEquals(0, RegexPrefilter.minLength("^(a)(b)(c)(d)(e)(f)(g)(h)(i)(j)\\10$"));
+        assertEquals(0, RegexPrefilter.minLength("^(\\w+)-\\1$"));
+    }
+
+    @Test
+    void unterminatedQuoteIsNotMeasured() {
+        assertEquals(-1, RegexPrefilter.maxInputLength("^\\Qa$"));
+        assertEquals(0, RegexPrefilter.minLength("^\\Qa$"));
+        assertEquals(4, RegexPrefilter.maxInputLength("^\\Qa$\\E$"));
+    }
+
+    private static boolean allows(String regex, String input) {
+        int maxInputLength = RegexPrefilter.maxInputLength(regex);
+        return input.length() >= RegexPrefilter.minLength(regex)
+                && (maxInputLength < 0 || input.length() <= maxInputLength)
+                && input.startsWith(RegexPrefilter.literalPrefix(regex));
+    }
+}
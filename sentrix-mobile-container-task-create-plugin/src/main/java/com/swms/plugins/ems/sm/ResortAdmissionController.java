@@ -0,0 +1,183 @@
+package com.swms.plugins.ems.sm;
+
+import com.swms.ems.api.constants.ContainerTaskTypeEnum;
+import com.swms.ems.api.dto.ContainerTaskDTO;
+import com.swms.plugins.common.ThreadContextSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded admission in front of the container task resort.
+ * <p>
+ * At most {@code maxInlineResorts} resorts run on the caller thread at the same time. When saturated, the resort is
+ * deferred to a single worker and coalesced with any pending resort for the same destinations; once
+ * {@code maxQueueDepth} distinct resorts are pending, new ones are shed. Shedding only skips a priority refresh, the
+ * next resort of the same destinations recomputes all of their tasks.
+ * <p>
+ * A deferred resort runs with the tenant and user context of the latest caller that deferred it. The worker is shut
+ * down with {@link #shutdown()}, pending resorts are then dropped.
+ */
+@Slf4j
+public class ResortAdmissionController {
+
+    private final Semaphore inlinePermits;
+    private final int maxQueueDepth;
+    private final BiConsumer<Collection<ContainerTaskDTO>, ContainerTaskTypeEnum> deferredResort;
+
+    // destinations + container task type >>> pending resort, guarded by this
+    private final Map<String, PendingResort> pendingResorts = new LinkedHashMap<>();
+    private boolean draining;
+    private boolean shutdown;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "sentrix-mobile-container-task-resort");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter inlineCounter;
+    private final Counter deferredCounter;
+    private final Counter coalescedCounter;
+    private final Counter shedCounter;
+
+    public ResortAdmissionController(int maxInlineResorts, int maxQueueDepth, MeterRegistry meterRegistry,
+                                     BiConsumer<Collection<ContainerTaskDTO>, ContainerTaskTypeEnum> deferredResort) {
+        this.inlinePermits = new Semaphore(maxInlineResorts);
+        this.maxQueueDepth = maxQueueDepth;
+        this.deferredResort = deferredResort;
+
+        Gauge.builder("sentrix.container.task.resort.queue.depth", this, ResortAdmissionController::queueDepth)
+                .register(meterRegistry);
+        this.inlineCounter = Counter.builder("sentrix.container.task.resort.inline").register(meterRegistry);
+        this.deferredCounter = Counter.builder("sentrix.container.task.resort.deferred").register(meterRegistry);
+        this.coalescedCounter = Counter.builder("sentrix.container.task.resort.coalesced").register(meterRegistry);
+        this.shedCounter = Counter.builder("sentrix.container.task.resort.shed").register(meterRegistry);
+    }
+
+    /**
+     * Run the resort on the caller thread if a permit is free.
+     *
+     * @return false if saturated and the resort was not run
+     */
+    public boolean tryRunInline(Runnable resort) {
+        if (!inlinePermits.tryAcquire()) {
+            return false;
+        }
+        try {
+            inlineCounter.increment();
+            resort.run();
+        } finally {
+            inlinePermits.release();
+        }
+        return true;
+    }
+
+    /**
+     * Queue the resort for the worker, merging it into a pending resort of the same destinations if there is one.
+     */
+    public void defer(Collection<ContainerTaskDTO> containerTasks, ContainerTaskTypeEnum containerTaskType) {
+        String key = buildKey(containerTasks, containerTaskType);
+        ThreadContextSnapshot context = ThreadContextSnapshot.capture();
+        synchronized (this) {
+            if (shutdown) {
+                shedCounter.increment();
+                log.warn("resort worker is shut down, shed resort for destinations: {}", key);
+                return;
+            }
+
+            PendingResort pendingResort = pendingResorts.get(key);
+            if (pendingResort != null) {
+                containerTasks.forEach(task -> pendingResort.containerTasks.put(task.getTaskCode(), task));
+                pendingResort.context = context;
+                coalescedCounter.increment();
+                return;
+            }
+
+            if (pendingResorts.size() >= maxQueueDepth) {
+                shedCounter.increment();
+                log.warn("resort queue is full, shed resort for destinations: {}, queue depth: {}", key, pendingResorts.size());
+                return;
+            }
+
+            PendingResort newPendingResort = new PendingResort(containerTaskType, context);
+            containerTasks.forEach(task -> newPendingResort.containerTasks.put(task.getTaskCode(), task));
+            pendingResorts.put(key, newPendingResort);
+            deferredCounter.increment();
+
+            if (!draining) {
+                draining = true;
+                worker.execute(this::drain);
+            }
+        }
+    }
+
+    public synchronized int queueDepth() {
+        return pendingResorts.size();
+    }
+
+    /**
+     * Stop the worker, interrupting the running resort and dropping the pending ones.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            if (!pendingResorts.isEmpty()) {
+                log.warn("drop {} pending resorts on shutdown", pendingResorts.size());
+                pendingResorts.clear();
+            }
+        }
+        worker.shutdownNow();
+    }
+
+    private void drain() {
+        while (true) {
+            PendingResort pendingResort;
+            synchronized (this) {
+                Iterator<PendingResort> iterator = pendingResorts.values().iterator();
+                if (shutdown || !iterator.hasNext()) {
+                    draining = false;
+                    return;
+                }
+                pendingResort = iterator.next();
+                iterator.remove();
+            }
+
+            try {
+                pendingResort.context.run(() -> deferredResort.accept(pendingResort.containerTasks.values(), pendingResort.containerTaskType));
+            } catch (Exception e) {
+                log.error("deferred resort container tasks failed", e);
+            }
+        }
+    }
+
+    private String buildKey(Collection<ContainerTaskDTO> containerTasks, ContainerTaskTypeEnum containerTaskType) {
+        TreeSet<String> destinations = containerTasks.stream()
+                .flatMap(task -> task.getDestinations().stream()).collect(Collectors.toCollection(TreeSet::new));
+        return containerTaskType + ":" + String.join(",", destinations);
+    }
+
+    private static class PendingResort {
+        private final ContainerTaskTypeEnum containerTaskType;
+        private final Map<String, ContainerTaskDTO> containerTasks = new LinkedHashMap<>();
+        // 最近一次延后该重排的调用方上下文
+        private ThreadContextSnapshot context;
+
+        private PendingResort(ContainerTaskTypeEnum containerTaskType, ThreadContextSnapshot context) {
+            this.containerTaskType = containerTaskType;
+            this.context = context;
+        }
+    }
+}
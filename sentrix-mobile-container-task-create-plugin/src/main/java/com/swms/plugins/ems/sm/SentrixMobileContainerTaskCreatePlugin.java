@@ -15,6 +15,7 @@ import com.swms.ems.api.dto.UpdateContainerTaskDTO;
 import com.swms.mdm.api.config.ISystemConfigApi;
 import com.swms.mdm.api.config.dto.SystemConfigDTO;
 import com.swms.plugin.extend.ems.ContainerTaskCreatePlugin;
+import com.swms.plugins.common.PluginStopListener;
 import com.swms.wms.api.basic.ILocationApi;
 import com.swms.wms.api.basic.IPutWallApi;
 import com.swms.wms.api.basic.IWorkStationApi;
@@ -31,13 +32,16 @@ import com.swms.wms.api.task.ITaskApi;
 import com.swms.wms.api.task.constants.OperationTaskStatusEnum;
 import com.swms.wms.api.task.constants.OperationTaskTypeEnum;
 import com.swms.wms.api.task.dto.OperationTaskDTO;
+import io.micrometer.core.instrument.Metrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.pf4j.Extension;
+import org.pf4j.PluginManager;
 import org.springframework.util.StopWatch;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -47,6 +51,13 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class SentrixMobileContainerTaskCreatePlugin implements ContainerTaskCreatePlugin {
 
+    private static final String PLUGIN_ID = "Sentrix-Mobile-Container-Task-Create-Plugin-0.0.1";
+
+    // 同时在请求线程上执行的重排数量，超过后延后合并执行
+    private static final int MAX_INLINE_RESORTS = Integer.getInteger("sentrix.container-task.max-inline-resorts", 2);
+    // 延后重排的最大排队数量，超过后丢弃
+    private static final int MAX_DEFERRED_RESORTS = Integer.getInteger("sentrix.container-task.max-deferred-resorts", 64);
+
     private final IOutboundPlanOrderApi outboundPlanOrderApi;
     private final IOutboundWaveApi outboundWaveApi;
     private final IPickingOrderApi pickingOrderApi;
@@ -57,9 +68,16 @@ public class SentrixMobileContainerTaskCreatePlugin implements ContainerTaskCrea
     private final ICallbackApi callbackApi;
     private final ISystemConfigApi systemConfigApi;
     private final IPutWallApi putWallApi;
+    private final PluginManager pluginManager;
+
+    private final AtomicBoolean stopListenerRegistered = new AtomicBoolean();
+    private final ResortAdmissionController resortAdmissionController = new ResortAdmissionController(
+            MAX_INLINE_RESORTS, MAX_DEFERRED_RESORTS, Metrics.globalRegistry,
+            (containerTasks, containerTaskType) -> resortContainerTasks(containerTasks, containerTaskType, Collections.emptyList()));
 
     @Override
     public void create(List<ContainerTaskDTO> containerTasks, ContainerTaskTypeEnum containerTaskType) {
+        registerStopListener();
         ContainerTaskDTO containerTaskDTO = containerTasks.stream().findAny().orElseThrow();
         BusinessTaskTypeEnum businessTaskType = containerTaskDTO.getBusinessTaskType();
 
@@ -81,8 +99,11 @@ public class SentrixMobileContainerTaskCreatePlugin implements ContainerTaskCrea
              List<ContainerTaskDTO> robotPickingContainerTasks = containerTaskMap.getOrDefault(ContainerTaskTypeEnum.OUTBOUND, Collections.emptyList());
             List<ContainerTaskDTO> robotOutboundContainerTasks = containerTaskMap.getOrDefault(ContainerTaskTypeEnum.PICKING, Collections.emptyList());
             Collection<ContainerTaskDTO> robotContainerTasks = CollectionUtils.union(robotPickingContainerTasks, robotOutboundContainerTasks);
-            if (CollectionUtils.isNotEmpty(robotPickingContainerTasks)) {
-                resortContainerTasks(robotContainerTasks, containerTaskType, newCustomerTaskIds);
+            if (CollectionUtils.isNotEmpty(robotPickingContainerTasks)
+                    && !resortAdmissionController.tryRunInline(() -> resortContainerTasks(robotContainerTasks, containerTaskType, newCustomerTaskIds))) {
+                // 重排繁忙，新任务先直接下发，重排延后执行
+                robotContainerTasks.forEach(task -> callback(task, containerTaskType, newCustomerTaskIds));
+                resortAdmissionController.defer(robotContainerTasks, containerTaskType);
             }
         } catch (Exception e) {
             log.error("resort robot container tasks failed", e);
@@ -92,6 +113,7 @@ public class SentrixMobileContainerTaskCreatePlugin implements ContainerTaskCrea
 
     @Override
     public void leave(ContainerOperation containerOperation, List<ContainerTaskDTO> containerTasks) {
+        registerStopListener();
         ContainerOperation.ContainerOperationDetail container = containerOperation.getContainerOperationDetails().iterator().next();
         // 批量完成所有搬箱任务
         containerTasks.stream().findFirst().ifPresent(task -> {
@@ -116,13 +138,25 @@ public class SentrixMobileContainerTaskCreatePlugin implements ContainerTaskCrea
                     return;
                 }
 
-                resortContainerTasks(containerTasks, containerTaskDTO.getContainerTaskType(), Collections.emptyList());
+                ContainerTaskTypeEnum containerTaskType = containerTaskDTO.getContainerTaskType();
+                if (!resortAdmissionController.tryRunInline(() -> resortContainerTasks(containerTasks, containerTaskType, Collections.emptyList()))) {
+                    resortAdmissionController.defer(containerTasks, containerTaskType);
+                }
             });
         } catch (Exception e) {
             log.error("resort container tasks failed", e);
         }
     }
 
+    /**
+     * Shut the resort worker down when the plugin stops.
+     */
+    private void registerStopListener() {
+        if (stopListenerRegistered.compareAndSet(false, true)) {
+            pluginManager.addPluginStateListener(new PluginStopListener(PLUGIN_ID, resortAdmissionController::shutdown));
+        }
+    }
+
     private void resortContainerTasks(Collection<ContainerTaskDTO> containerTasks, ContainerTaskTypeEnum containerTaskType, List<Long> newCustomerTaskIds) {
         List<WorkStationDTO> workStationDTOS = workStationApi.queryAllWorkStation().stream()
                 .filter(v -> WorkStationStatusEnum.ONLINE == v.getWorkStationStatus())
@@ -0,0 +1,163 @@
+package com.swms.plugins.print.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded stand-in for the print server and the label service.
+ * <p>
+ * Serves {@code POST /print}, the four label url templates under {@code /label/} (answering with a pdf url on this
+ * server) and the pdf files under {@code /pdf/}. Latency and error rate are set per side, the pdf size for all pdfs.
+ */
+@Slf4j
+public class LabelPrintStandInServer implements AutoCloseable {
+
+    public static final String FIRST_LABEL_PATH = "/label/first/";
+    public static final String SPLIT_PATH = "/label/split/";
+    public static final String ADD_TO_LABEL_PATH = "/label/add/";
+    public static final String ADD_TO_SPLIT_PATH = "/label/add-split/";
+    private static final String PRINT_PATH = "/print";
+    private static final String PDF_PATH = "/pdf/";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final StandInOptions printServerOptions;
+    private final StandInOptions labelServiceOptions;
+    private final byte[] pdf;
+
+    private final AtomicLong printRequests = new AtomicLong();
+    private final AtomicLong printErrors = new AtomicLong();
+    private final AtomicLong labelRequests = new AtomicLong();
+    private final AtomicLong labelErrors = new AtomicLong();
+    private final AtomicLong pdfDownloads = new AtomicLong();
+
+    public LabelPrintStandInServer(int port, int threads, StandInOptions printServerOptions,
+                                   StandInOptions labelServiceOptions, int pdfSizeBytes) throws IOException {
+        this.printServerOptions = printServerOptions;
+        this.labelServiceOptions = labelServiceOptions;
+        this.pdf = buildPdf(pdfSizeBytes);
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext(PRINT_PATH, this::handlePrint);
+        server.createContext("/label/", this::handleLabel);
+        server.createContext(PDF_PATH, this::handlePdf);
+        server.start();
+        log.info("Stand-in server started at {}", getBaseUrl());
+    }
+
+    public String getHost() {
+        return server.getAddress().getHostString();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + getHost() + ":" + getPort();
+    }
+
+    public long getPrintRequests() {
+        return printRequests.get();
+    }
+
+    public long getPrintErrors() {
+        return printErrors.get();
+    }
+
+    public long getLabelRequests() {
+        return labelRequests.get();
+    }
+
+    public long getLabelErrors() {
+        return labelErrors.get();
+    }
+
+    public long getPdfDownloads() {
+        return pdfDownloads.get();
+    }
+
+    private void handlePrint(HttpExchange exchange) throws IOException {
+        printRequests.incrementAndGet();
+        handle(exchange, printServerOptions, printErrors, () -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            send(exchange, 200, "application/json", "{}".getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    private void handleLabel(HttpExchange exchange) throws IOException {
+        labelRequests.incrementAndGet();
+        handle(exchange, labelServiceOptions, labelErrors, () -> {
+            String path = exchange.getRequestURI().getPath();
+            String key = path.substring(path.lastIndexOf('/') + 1);
+            String pdfUrl = getBaseUrl() + PDF_PATH + path.substring("/label/".length(), path.lastIndexOf('/')) + "-" + key + ".pdf";
+            String response = "{\"status\":\"1\",\"url\":\"" + pdfUrl + "\"}";
+            send(exchange, 200, "application/json", response.getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    private void handlePdf(HttpExchange exchange) throws IOException {
+        pdfDownloads.incrementAndGet();
+        handle(exchange, labelServiceOptions, labelErrors, () -> send(exchange, 200, "application/pdf", pdf));
+    }
+
+    private void handle(HttpExchange exchange, StandInOptions options, AtomicLong errors, Responder responder) throws IOException {
+        try (exchange) {
+            long latencyMillis = options.nextLatencyMillis();
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if (options.nextIsError()) {
+                errors.incrementAndGet();
+                send(exchange, 500, "text/plain", "stand-in error".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            responder.respond();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] buildPdf(int sizeBytes) {
+        byte[] header = "%PDF-1.4\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] content = new byte[Math.max(sizeBytes, header.length)];
+        Arrays.fill(content, (byte) ' ');
+        System.arraycopy(header, 0, content, 0, header.length);
+        return content;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface Responder {
+        void respond() throws IOException;
+    }
+}
@@ -0,0 +1,30 @@
+package com.swms.plugins.print.loadtest;
+
+import com.swms.plugins.print.SentrixMobileLabelPrintPlugin;
+import com.swms.plugins.print.config.PrintPluginConfig;
+import com.swms.wms.api.basic.IPutWallApi;
+import com.swms.wms.api.outbound.IOutboundPlanOrderApi;
+import com.swms.wms.api.outbound.IPickingOrderApi;
+import com.swms.wms.api.task.ITransferContainerApi;
+import org.pf4j.DefaultPluginManager;
+
+/**
+ * {@link SentrixMobileLabelPrintPlugin} outside the plugin framework, reading a fixed print config instead of the
+ * tenant config. Its plugin manager has no plugins, the plugin is never stopped.
+ */
+public class LoadTestPrintPlugin extends SentrixMobileLabelPrintPlugin {
+
+    private final PrintPluginConfig config;
+
+    public LoadTestPrintPlugin(IPutWallApi putWallApi, IPickingOrderApi pickingOrderApi,
+                               IOutboundPlanOrderApi outboundPlanOrderApi, ITransferContainerApi transferContainerApi,
+                               PrintPluginConfig config) {
+        super(putWallApi, pickingOrderApi, outboundPlanOrderApi, transferContainerApi, new DefaultPluginManager());
+        this.config = config;
+    }
+
+    @Override
+    protected PrintPluginConfig loadPrintPluginConfig() {
+        return config;
+    }
+}
@@ -0,0 +1,78 @@
+package com.swms.plugins.print.loadtest;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swms.wms.api.printer.constants.LabelTypeEnum;
+import com.swms.wms.api.printer.constants.PrintNodeEnum;
+import com.swms.wms.api.printer.event.PrintEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+/**
+ * Print event streams to replay: a recorded stream, one json {@link PrintEvent} per line, or a synthetic mix of scan
+ * location, dispatch order and sku label events. Scan location events carry a wave no or, as scanned at the put wall,
+ * a slot code that is resolved to its wave.
+ */
+public final class PrintEventSource {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // 合成事件中各类事件的占比，其余为扫描库位
+    private static final int DISPATCH_ORDER_PERCENT = 20;
+    private static final int SKU_LABEL_PERCENT = 10;
+    private static final int SLOT_CODE_SCAN_PERCENT = 35;
+    private static final int SLOTS_PER_DISPATCH = 3;
+
+    private PrintEventSource() {
+    }
+
+    public static List<PrintEvent> load(Path file) throws IOException {
+        List<PrintEvent> events = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (!line.isBlank()) {
+                events.add(OBJECT_MAPPER.readValue(line, PrintEvent.class));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Generate {@code count} events over {@code stationIds}, cycling through {@code waveCount} waves, so waves repeat
+     * the way reprints and re-scans do.
+     */
+    public static List<PrintEvent> synthetic(int count, List<Long> stationIds, int waveCount, String pdfBaseUrl) {
+        List<PrintEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("eventId", i + 1);
+            event.put("workStationId", stationIds.get(i % stationIds.size()));
+
+            long wave = i % waveCount;
+            int kind = i % 100;
+            if (kind < SKU_LABEL_PERCENT) {
+                event.put("labelType", LabelTypeEnum.SKU.name());
+                event.put("parameter", List.of(Map.of("url", pdfBaseUrl + "/pdf/sku-" + wave + ".pdf")));
+            } else if (kind < SKU_LABEL_PERCENT + DISPATCH_ORDER_PERCENT) {
+                event.put("printNode", PrintNodeEnum.PRINT_NODE_DISPATCH_ORDER.name());
+                event.put("parameter", LongStream.range(0, SLOTS_PER_DISPATCH)
+                        .mapToObj(slot -> StubWmsApis.slotCode((wave + slot) % waveCount)).toList());
+            } else if (kind < SKU_LABEL_PERCENT + DISPATCH_ORDER_PERCENT + SLOT_CODE_SCAN_PERCENT) {
+                event.put("printNode", PrintNodeEnum.PRINT_NODE_SCAN_LOCATION_CODE.name());
+                event.put("parameter", StubWmsApis.slotCode(wave));
+            } else {
+                event.put("printNode", PrintNodeEnum.PRINT_NODE_SCAN_LOCATION_CODE.name());
+                event.put("parameter", StubWmsApis.waveNo(wave));
+            }
+            events.add(OBJECT_MAPPER.convertValue(event, PrintEvent.class));
+        }
+        return events;
+    }
+}
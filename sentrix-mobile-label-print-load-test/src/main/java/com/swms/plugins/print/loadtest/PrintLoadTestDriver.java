@@ -0,0 +1,227 @@
+package com.swms.plugins.print.loadtest;
+
+import com.swms.plugin.extend.extensions.OperationContext;
+import com.swms.plugins.print.SentrixMobileLabelPrintPlugin;
+import com.swms.plugins.print.config.PrintConfig;
+import com.swms.plugins.print.config.PrintPluginConfig;
+import com.swms.wms.api.printer.constants.LabelTypeEnum;
+import com.swms.wms.api.printer.event.PrintEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Replays a print event stream against {@link SentrixMobileLabelPrintPlugin} at a target rate, with the print server
+ * and the label service replaced by {@link LabelPrintStandInServer}, then reports throughput and latency percentiles.
+ * <p>
+ * Options, all {@code --name=value}:
+ * <ul>
+ *     <li>{@code events}: json lines file of print events to replay; a synthetic stream is used if absent</li>
+ *     <li>{@code count}, {@code stations}, {@code waves}: size of the synthetic stream</li>
+ *     <li>{@code rate}: events per second; {@code event-threads}: threads handling events</li>
+ *     <li>{@code print-latency}, {@code print-jitter}, {@code print-error-rate}: print server behaviour</li>
+ *     <li>{@code label-latency}, {@code label-jitter}, {@code label-error-rate}: label service behaviour</li>
+ *     <li>{@code pdf-size}: bytes per pdf; {@code batch-size}, {@code spool}, {@code prefetch}: plugin config</li>
+ *     <li>{@code drain-seconds}: max time to wait for queued prints after the last event</li>
+ * </ul>
+ */
+public class PrintLoadTestDriver {
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.95, 0.99};
+    private static final long DRAIN_IDLE_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        registry.config()
+                .meterFilter(MeterFilter.ignoreTags("station"))
+                .meterFilter(new MeterFilter() {
+                    @Override
+                    public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                        return id.getType() == Meter.Type.TIMER
+                                ? DistributionStatisticConfig.builder().percentiles(PERCENTILES).build().merge(config)
+                                : config;
+                    }
+                });
+        Metrics.addRegistry(registry);
+
+        StandInOptions printServerOptions = new StandInOptions(longOption(options, "print-latency", 20),
+                longOption(options, "print-jitter", 10), doubleOption(options, "print-error-rate", 0));
+        StandInOptions labelServiceOptions = new StandInOptions(longOption(options, "label-latency", 50),
+                longOption(options, "label-jitter", 50), doubleOption(options, "label-error-rate", 0));
+
+        try (LabelPrintStandInServer server = new LabelPrintStandInServer(0, 64, printServerOptions, labelServiceOptions,
+                (int) longOption(options, "pdf-size", 64 * 1024))) {
+
+            List<Long> stationIds = LongStream.rangeClosed(1, longOption(options, "stations", 20)).boxed().toList();
+            PrintPluginConfig config = buildConfig(server, stationIds, options);
+            StubWmsApis apis = new StubWmsApis(server.getBaseUrl());
+            SentrixMobileLabelPrintPlugin plugin = new LoadTestPrintPlugin(apis.putWallApi(), apis.pickingOrderApi(),
+                    apis.outboundPlanOrderApi(), apis.transferContainerApi(), config);
+
+            List<PrintEvent> events = options.containsKey("events")
+                    ? PrintEventSource.load(Path.of(options.get("events")))
+                    : PrintEventSource.synthetic((int) longOption(options, "count", 10000), stationIds,
+                    (int) longOption(options, "waves", 2000), server.getBaseUrl());
+
+            long startNanos = System.nanoTime();
+            replay(plugin, events, doubleOption(options, "rate", 200), (int) longOption(options, "event-threads", 16), registry);
+            long sentNanos = System.nanoTime() - startNanos;
+            awaitDrained(registry, TimeUnit.SECONDS.toMillis(longOption(options, "drain-seconds", 60)));
+            long totalNanos = System.nanoTime() - startNanos;
+
+            report(registry, server, events.size(), sentNanos, totalNanos);
+        }
+        System.exit(0);
+    }
+
+    private static void replay(SentrixMobileLabelPrintPlugin plugin, List<PrintEvent> events, double rate,
+                               int eventThreads, SimpleMeterRegistry registry) throws InterruptedException {
+        ExecutorService eventExecutor = Executors.newFixedThreadPool(eventThreads);
+        Timer handleTimer = Timer.builder("loadtest.event.handle").register(registry);
+        Counter handleErrors = Counter.builder("loadtest.event.error").register(registry);
+
+        // 开环发送：按目标速率发送，不等待前一个事件处理完
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < events.size(); i++) {
+            long waitNanos = startNanos + i * intervalNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            OperationContext<PrintEvent> operationContext = OperationContext.<PrintEvent>builder()
+                    .operationObject(events.get(i)).build();
+            eventExecutor.execute(() -> {
+                try {
+                    // 与插件框架相同的入口，返回时事件的打印文档已经入队
+                    handleTimer.record(() -> plugin.doOperation(operationContext));
+                } catch (Exception e) {
+                    handleErrors.increment();
+                }
+            });
+        }
+        eventExecutor.shutdown();
+        eventExecutor.awaitTermination(1, TimeUnit.HOURS);
+    }
+
+    /**
+     * Wait until no document was printed or failed for a while, or the timeout.
+     */
+    private static void awaitDrained(SimpleMeterRegistry registry, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        double last = -1;
+        long lastChange = System.currentTimeMillis();
+        while (System.currentTimeMillis() < deadline) {
+            double finished = countOutcomes(registry).values().stream().mapToDouble(Double::doubleValue).sum();
+            if (finished != last) {
+                last = finished;
+                lastChange = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - lastChange >= DRAIN_IDLE_MILLIS) {
+                return;
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private static void report(SimpleMeterRegistry registry, LabelPrintStandInServer server, int eventCount,
+                               long sentNanos, long totalNanos) {
+        double sentSeconds = sentNanos / 1e9;
+        double totalSeconds = totalNanos / 1e9;
+        Map<String, Double> outcomes = countOutcomes(registry);
+        double printed = outcomes.getOrDefault("printed", 0.0);
+
+        System.out.printf("events: %d in %.1f s (%.1f events/s), handle errors: %.0f%n", eventCount, sentSeconds,
+                eventCount / sentSeconds, registry.get("loadtest.event.error").counter().count());
+        System.out.printf("documents printed: %.0f in %.1f s (%.1f documents/s)%n", printed, totalSeconds, printed / totalSeconds);
+        System.out.printf("outcomes: %s%n", outcomes);
+        System.out.printf("print server requests: %d (errors %d), label service requests: %d (errors %d), pdf downloads: %d%n",
+                server.getPrintRequests(), server.getPrintErrors(), server.getLabelRequests(), server.getLabelErrors(),
+                server.getPdfDownloads());
+
+        printTimer("event handle", registry.get("loadtest.event.handle").timer());
+        registry.find("sentrix.print.stage.duration").timers()
+                .forEach(timer -> printTimer("stage " + timer.getId().getTag("stage"), timer));
+        registry.find("sentrix.print.event.latency").timers()
+                .forEach(timer -> printTimer("event to print " + timer.getId().getTag("label.type")
+                        + "/" + timer.getId().getTag("print.node"), timer));
+    }
+
+    private static Map<String, Double> countOutcomes(SimpleMeterRegistry registry) {
+        return registry.find("sentrix.print.label").counters().stream()
+                .collect(Collectors.groupingBy(v -> v.getId().getTag("outcome"), Collectors.summingDouble(Counter::count)));
+    }
+
+    private static void printTimer(String name, Timer timer) {
+        String percentiles = Arrays.stream(timer.takeSnapshot().percentileValues())
+                .map(v -> String.format("p%.0f=%.1f", v.percentile() * 100, v.value(TimeUnit.MILLISECONDS)))
+                .collect(Collectors.joining(" "));
+        System.out.printf("%-40s count=%d mean=%.1f ms %s ms%n", name, timer.count(), timer.mean(TimeUnit.MILLISECONDS), percentiles);
+    }
+
+    private static PrintPluginConfig buildConfig(LabelPrintStandInServer server, List<Long> stationIds, Map<String, String> options) {
+        PrintPluginConfig config = new PrintPluginConfig();
+        config.setAuthorization("load-test");
+        config.setFirstLabelUrl(server.getBaseUrl() + LabelPrintStandInServer.FIRST_LABEL_PATH + "$customerWaveNo");
+        config.setSplitUrl(server.getBaseUrl() + LabelPrintStandInServer.SPLIT_PATH + "$customerWaveNo");
+        config.setAddToLabelUrl(server.getBaseUrl() + LabelPrintStandInServer.ADD_TO_LABEL_PATH + "$customerOrderNo");
+        config.setAddToSplitUrl(server.getBaseUrl() + LabelPrintStandInServer.ADD_TO_SPLIT_PATH + "$customerOrderNo");
+        config.setPrintBatchMaxSize((int) longOption(options, "batch-size", 1));
+        config.setPdfSpoolEnabled(Boolean.parseBoolean(options.getOrDefault("spool", "false")));
+        config.setPrefetchEnabled(Boolean.parseBoolean(options.getOrDefault("prefetch", "false")));
+
+        Map<String, Map<LabelTypeEnum, PrintConfig>> stationPrintConfig = new HashMap<>();
+        for (Long stationId : stationIds) {
+            Map<LabelTypeEnum, PrintConfig> labelTypePrintConfigs = new EnumMap<>(LabelTypeEnum.class);
+            for (LabelTypeEnum labelType : List.of(LabelTypeEnum.LABEL, LabelTypeEnum.A4PAPER, LabelTypeEnum.SKU)) {
+                PrintConfig printConfig = new PrintConfig();
+                printConfig.setHost(server.getHost());
+                printConfig.setPort(server.getPort());
+                printConfig.setPrintName("station-" + stationId + "-" + labelType.name());
+                labelTypePrintConfigs.put(labelType, printConfig);
+            }
+            stationPrintConfig.put(String.valueOf(stationId), labelTypePrintConfigs);
+        }
+        config.setStationPrintConfig(stationPrintConfig);
+        return config;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Options must be --name=value, got: " + arg);
+            }
+            int index = arg.indexOf('=');
+            options.put(arg.substring(2, index), arg.substring(index + 1));
+        }
+        return options;
+    }
+
+    private static long longOption(Map<String, String> options, String name, long defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    private static double doubleOption(Map<String, String> options, String name, double defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,21 @@
+package com.swms.plugins.print.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Behaviour of a stand-in endpoint.
+ *
+ * @param latencyMillis       fixed latency of every response
+ * @param latencyJitterMillis random extra latency, 0 to this value
+ * @param errorRate           share of requests answered with http 500, 0 to 1
+ */
+public record StandInOptions(long latencyMillis, long latencyJitterMillis, double errorRate) {
+
+    long nextLatencyMillis() {
+        return latencyMillis + (latencyJitterMillis <= 0 ? 0 : ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1));
+    }
+
+    boolean nextIsError() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+}
@@ -0,0 +1,145 @@
+package com.swms.plugins.print.loadtest;
+
+import com.swms.wms.api.basic.IPutWallApi;
+import com.swms.wms.api.basic.constants.PutWallSlotStatusEnum;
+import com.swms.wms.api.basic.dto.PutWallSlotDTO;
+import com.swms.wms.api.outbound.IOutboundPlanOrderApi;
+import com.swms.wms.api.outbound.IPickingOrderApi;
+import com.swms.wms.api.outbound.constants.PickingOrderStatusEnum;
+import com.swms.wms.api.outbound.dto.OutboundPlanOrderDTO;
+import com.swms.wms.api.outbound.dto.PickingOrderDTO;
+import com.swms.wms.api.task.ITransferContainerApi;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * In-memory stand-ins of the wms apis used by the print plugin, deriving all data from slot codes and wave nos.
+ * <p>
+ * Slot {@code S-<n>} is bound to picking order {@code n} of wave {@code WAVE_<n>}; every wave has one parent plan order,
+ * an a4 paper and no transfer container records. Methods the plugin does not use return empty values.
+ */
+public class StubWmsApis {
+
+    private static final String WAVE_NO_PREFIX = "WAVE_";
+    private static final String SLOT_CODE_PREFIX = "S-";
+
+    private final String pdfBaseUrl;
+
+    public StubWmsApis(String pdfBaseUrl) {
+        this.pdfBaseUrl = pdfBaseUrl;
+    }
+
+    public static String slotCode(long n) {
+        return SLOT_CODE_PREFIX + n;
+    }
+
+    public static String waveNo(long n) {
+        return WAVE_NO_PREFIX + n;
+    }
+
+    @SuppressWarnings("unchecked")
+    public IPutWallApi putWallApi() {
+        return stub(IPutWallApi.class, Map.of(
+                "getPutWallSlot", args -> putWallSlot((String) args[0]),
+                "getPutWallSlots", args -> ((Collection<String>) args[0]).stream().map(this::putWallSlot).toList(),
+                "findAllPutWallDTO", args -> List.of()));
+    }
+
+    @SuppressWarnings("unchecked")
+    public IPickingOrderApi pickingOrderApi() {
+        return stub(IPickingOrderApi.class, Map.of(
+                "getById", args -> pickingOrder((Long) args[0]),
+                "findOrderByPickingOrderIds", args -> ((Collection<Long>) args[0]).stream().map(this::pickingOrder).toList(),
+                "findPickingOrderByWaveNo", args -> List.of(pickingOrder(waveIndex((String) args[0])))));
+    }
+
+    @SuppressWarnings("unchecked")
+    public IOutboundPlanOrderApi outboundPlanOrderApi() {
+        return stub(IOutboundPlanOrderApi.class, Map.of(
+                "findByWaveNos", args -> ((Collection<String>) args[0]).stream().map(this::outboundPlanOrder).toList()));
+    }
+
+    public ITransferContainerApi transferContainerApi() {
+        return stub(ITransferContainerApi.class, Map.of(
+                "findByPickingOrderIds", args -> List.of(),
+                "assertWaveHasA4PdfUrl", args -> true));
+    }
+
+    private PutWallSlotDTO putWallSlot(String slotCode) {
+        PutWallSlotDTO putWallSlot = new PutWallSlotDTO();
+        putWallSlot.setPutWallSlotCode(slotCode);
+        putWallSlot.setPutWallSlotStatus(PutWallSlotStatusEnum.WAITING_BINDING);
+        putWallSlot.setPickingOrderId(Long.parseLong(slotCode.substring(SLOT_CODE_PREFIX.length())));
+        return putWallSlot;
+    }
+
+    private PickingOrderDTO pickingOrder(Long id) {
+        PickingOrderDTO pickingOrder = new PickingOrderDTO();
+        pickingOrder.setId(id);
+        pickingOrder.setWaveNo(waveNo(id));
+        pickingOrder.setPickingOrderStatus(PickingOrderStatusEnum.NEW);
+        return pickingOrder;
+    }
+
+    private OutboundPlanOrderDTO outboundPlanOrder(String waveNo) {
+        OutboundPlanOrderDTO outboundPlanOrder = new OutboundPlanOrderDTO();
+        outboundPlanOrder.setWaveNo(waveNo);
+        // 父单：客户单号和客户波次号相同
+        outboundPlanOrder.setCustomerWaveNo("C" + waveNo);
+        outboundPlanOrder.setCustomerOrderNo("C" + waveNo);
+        outboundPlanOrder.setA4Paper(pdfBaseUrl + "/pdf/a4-" + waveNo + ".pdf");
+        return outboundPlanOrder;
+    }
+
+    private static long waveIndex(String waveNo) {
+        return Long.parseLong(waveNo.substring(WAVE_NO_PREFIX.length()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> api, Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(api.getClassLoader(), new Class<?>[]{api}, (proxy, method, args) -> {
+            Function<Object[], Object> implementation = methods.get(method.getName());
+            if (implementation != null) {
+                return implementation.apply(args);
+            }
+            return defaultValue(proxy, method, args);
+        });
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "toString" -> "stub " + method.getDeclaringClass().getSimpleName();
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> emptyValue(method.getReturnType());
+        };
+    }
+
+    private static Object emptyValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (List.class.isAssignableFrom(type) || Collection.class.equals(type)) {
+            return List.of();
+        }
+        if (Set.class.isAssignableFrom(type)) {
+            return Set.of();
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return Map.of();
+        }
+        return null;
+    }
+}
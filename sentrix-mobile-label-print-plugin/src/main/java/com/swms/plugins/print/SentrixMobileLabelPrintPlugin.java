@@ -4,11 +4,32 @@ import com.swms.common.utils.utils.JsonUtils;
 import com.swms.plugin.extend.extensions.OperationContext;
 import com.swms.plugin.extend.extensions.configuration.TenantPluginConfig;
 import com.swms.plugin.extend.wms.outbound.PrintPlugin;
-import com.swms.plugins.print.config.PrintConfig;
+import com.swms.plugins.common.PluginStopListener;
+import com.swms.plugins.common.TenantKey;
+import com.swms.plugins.common.ThreadContextSnapshot;
+import com.swms.plugins.print.cache.PdfSpoolCache;
+import com.swms.plugins.print.cache.PdfUrlCache;
+import com.swms.plugins.print.client.LabelPrintHttpClient;
+import com.swms.plugins.print.config.HttpClientConfig;
+import com.swms.plugins.print.config.PrintConfigSnapshot;
 import com.swms.plugins.print.config.PrintPluginConfig;
+import com.swms.plugins.print.config.PrinterEndpoint;
+import com.swms.plugins.print.config.TenantScopes;
+import com.swms.plugins.print.dedup.PrintDedupWindow;
 import com.swms.plugins.print.dto.PrintRequestDTO;
+import com.swms.plugins.print.health.PrinterHealthTracker;
+import com.swms.plugins.print.index.PutWallSlotIndex;
+import com.swms.plugins.print.metrics.PrintMetrics;
+import com.swms.plugins.print.prefetch.LabelPrefetcher;
+import com.swms.plugins.print.queue.PrintBatch;
+import com.swms.plugins.print.queue.PrintDeadLetterStore;
+import com.swms.plugins.print.queue.PrintDocument;
+import com.swms.plugins.print.queue.PrintJob;
+import com.swms.plugins.print.queue.PrintJobDispatcher;
+import com.swms.plugins.print.resolve.WaveLabelResolution;
 import com.swms.wms.api.basic.IPutWallApi;
 import com.swms.wms.api.basic.constants.PutWallSlotStatusEnum;
+import com.swms.wms.api.basic.dto.PutWallDTO;
 import com.swms.wms.api.basic.dto.PutWallSlotDTO;
 import com.swms.wms.api.outbound.IOutboundPlanOrderApi;
 import com.swms.wms.api.outbound.IPickingOrderApi;
@@ -23,23 +44,40 @@ import com.swms.wms.api.printer.event.PrintEvent;
 import com.swms.wms.api.task.ITransferContainerApi;
 import com.swms.wms.api.task.constants.TransferContainerRecordStatusEnum;
 import com.swms.wms.api.task.dto.TransferContainerRecordDTO;
+import io.micrometer.core.instrument.Metrics;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.pf4j.Extension;
+import org.pf4j.PluginManager;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.util.CollectionUtils;
-import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -50,12 +88,85 @@ public class SentrixMobileLabelPrintPlugin implements PrintPlugin {
     private static final String OUTBOUND_WAVE_NO_PREFIX = "WAVE_";
 
     private static final String PLUGIN_ID = "Sentrix-Mobile-Label-Print-Plugin-0.0.1";
-    private static final String PRINT_URL = "http://$host:$port/print";
+
+    // 租户状态数量上限，超过空闲时间未使用的租户状态被关闭
+    private static final int MAX_TENANT_SCOPES = 64;
+    private static final long TENANT_SCOPE_IDLE_MILLIS = 10 * 60 * 1000L;
+    // 重新读取租户配置的间隔，配置变化时替换配置快照
+    private static final long TENANT_CONFIG_CHECK_MILLIS = 5000;
+
+    // 到同一打印机主机或 label 服务的连接数上限
+    private static final int MAX_HTTP_CONNECTIONS_PER_ROUTE = Integer.getInteger("sentrix.print.http.max-connections-per-route", 8);
+
+    // 同时打印的打印机数量上限
+    private static final int MAX_PARALLEL_PRINTERS = 8;
+    // 插件停止时等待队列中打印任务完成的时间，之后剩余的任务写入死信
+    private static final long PRINT_DRAIN_TIMEOUT_MILLIS = 5000;
+
+    // 打印机熔断：最近请求窗口大小、最少请求数、失败率阈值、熔断时长
+    private static final int PRINTER_HEALTH_WINDOW_SIZE = 20;
+    private static final int PRINTER_HEALTH_MIN_CALLS = 5;
+    private static final double PRINTER_FAILURE_RATE_THRESHOLD = 0.5;
+    private static final long PRINTER_CIRCUIT_OPEN_MILLIS = 30 * 1000L;
+
+    // 每个租户的去重窗口保留的 key 数量上限
+    private static final int PRINT_DEDUP_CAPACITY = 16 * 1024;
+
+    // 每个租户的 pdf url 缓存的波次数量上限和过期时间
+    private static final int PDF_URL_CACHE_MAX_WAVES = 10000;
+    private static final long PDF_URL_CACHE_EXPIRE_MILLIS = 2 * 60 * 60 * 1000L;
+
+    // 每个本地 pdf 缓存目录的总大小上限
+    private static final long PDF_SPOOL_MAX_BYTES = 512 * 1024 * 1024L;
+    private static final String PRINT_FLAVOR_BASE64 = "base64";
+
+    // 槽口绑定轮询间隔和预取并发数
+    private static final long PREFETCH_INTERVAL_MILLIS = 2000;
+    private static final int PREFETCH_PARALLELISM = 4;
+
+    // 槽口绑定索引的刷新间隔，超过该间隔的绑定重新实时查询
+    private static final long SLOT_INDEX_REFRESH_MILLIS = 2000;
+
+    // 同一事件内并发请求 label 服务的线程数
+    private static final int LABEL_RESOLVE_PARALLELISM = 8;
 
     private final IPutWallApi putWallApi;
     private final IPickingOrderApi pickingOrderApi;
     private final IOutboundPlanOrderApi outboundPlanOrderApi;
     private final ITransferContainerApi transferContainerApi;
+    private final PluginManager pluginManager;
+
+    private final AtomicBoolean stopListenerRegistered = new AtomicBoolean();
+
+    private final LabelPrintHttpClient httpClient = new LabelPrintHttpClient(MAX_HTTP_CONNECTIONS_PER_ROUTE, Metrics.globalRegistry);
+    private final PrintMetrics printMetrics = new PrintMetrics(Metrics.globalRegistry);
+    private final PrinterHealthTracker printerHealthTracker = new PrinterHealthTracker(PRINTER_HEALTH_WINDOW_SIZE,
+            PRINTER_HEALTH_MIN_CALLS, PRINTER_FAILURE_RATE_THRESHOLD, PRINTER_CIRCUIT_OPEN_MILLIS, Metrics.globalRegistry);
+    private final PrintJobDispatcher printJobDispatcher = new PrintJobDispatcher(MAX_PARALLEL_PRINTERS,
+            this::sendPrintRequest, new PrintDeadLetterStore(), printerHealthTracker, printMetrics);
+    // spool directory >>> spool cache, shared by the tenants configured with the same directory
+    private final Map<Path, PdfSpoolCache> pdfSpoolCaches = new ConcurrentHashMap<>();
+
+    private final ExecutorService labelResolveExecutor = Executors.newFixedThreadPool(LABEL_RESOLVE_PARALLELISM, r -> {
+        Thread thread = new Thread(r, "sentrix-mobile-label-resolve");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 所有租户的槽口索引刷新和预取轮询共用
+    private final ScheduledExecutorService backgroundScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sentrix-mobile-label-background");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_PARALLELISM, r -> {
+        Thread thread = new Thread(r, "sentrix-mobile-label-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TenantScopes<TenantScope> tenantScopes = new TenantScopes<>(MAX_TENANT_SCOPES, TENANT_SCOPE_IDLE_MILLIS,
+            TENANT_CONFIG_CHECK_MILLIS, TenantScope::new, TenantScope::useSnapshot, TenantScope::close);
 
     @Override
     public Void doOperation(OperationContext<PrintEvent> operationContext) {
@@ -72,22 +183,71 @@ public class SentrixMobileLabelPrintPlugin implements PrintPlugin {
         return null;
     }
 
+    /**
+     * Read the print config of the tenant of the current event.
+     */
+    protected PrintPluginConfig loadPrintPluginConfig() {
+        return TenantPluginConfig.getTenantConfig(PLUGIN_ID, PrintPluginConfig.class);
+    }
+
     /**
      * Handle print logic when a workstation ID is available.
      */
     private void handleWorkStationPrint(Long workStationId, PrintEvent event) {
+        registerStopListener();
+        TenantScope tenant = tenantScopes.get(TenantKey.current(), this::loadPrintPluginConfig);
+        tenant.useContext(ThreadContextSnapshot.capture());
+        if (isDuplicateEvent(tenant, event)) {
+            return;
+        }
+
+        PrintBatch batch = new PrintBatch(String.valueOf(event.getEventId()), workStationId, event.getPrintNode(), tenant.snapshot);
+        boolean collected = false;
+        boolean submitted = false;
+        try {
+            collectWorkStationPrint(tenant, workStationId, event, batch);
+            collected = true;
+        } finally {
+            try {
+                batch.submit(printJobDispatcher);
+                submitted = true;
+            } finally {
+                settleDedupKeys(tenant, event, batch, collected, submitted);
+            }
+        }
+    }
+
+    /**
+     * Stop the background pollers of all tenants, drain the print queues and release the threads and connections of
+     * the plugin when it stops.
+     */
+    private void registerStopListener() {
+        if (stopListenerRegistered.compareAndSet(false, true)) {
+            pluginManager.addPluginStateListener(new PluginStopListener(PLUGIN_ID, () -> {
+                tenantScopes.closeAll();
+                backgroundScheduler.shutdownNow();
+                prefetchExecutor.shutdownNow();
+                // 排队的打印任务还要解析 label url 和发送请求，先关闭打印队列
+                printJobDispatcher.close(PRINT_DRAIN_TIMEOUT_MILLIS);
+                labelResolveExecutor.shutdownNow();
+                httpClient.close();
+            }));
+        }
+    }
+
+    private void collectWorkStationPrint(TenantScope tenant, Long workStationId, PrintEvent event, PrintBatch batch) {
 
         if (LabelTypeEnum.SKU == event.getLabelType()) {
             // Retrieve config and trigger print
-            PrintConfig printConfig = getWorkStationPrintConfig(workStationId, LabelTypeEnum.SKU);
-            if (printConfig == null) {
+            PrinterEndpoint printer = getWorkStationPrinter(batch.getConfigSnapshot(), event, LabelTypeEnum.SKU);
+            if (printer == null) {
                 return;
             }
             List<OutboundCustomLabelDTO> customLabelDTOS = JsonUtils.string2List(JsonUtils.obj2String(event.getParameter()), OutboundCustomLabelDTO.class);
-            triggerSkuLabelPrint(printConfig, customLabelDTOS);
+            triggerSkuLabelPrint(printer, customLabelDTOS, batch);
         } else if (PrintNodeEnum.PRINT_NODE_SCAN_LOCATION_CODE == event.getPrintNode()) {
             String parameter = String.valueOf(event.getParameter());
-            String waveNo = transferToWaveNo(parameter, workStationId);
+            String waveNo = printMetrics.recordStage(PrintMetrics.STAGE_SLOT_TO_WAVE, () -> transferToWaveNo(tenant, parameter, workStationId));
 
             if (StringUtils.isEmpty(waveNo)) {
                 log.warn("Cannot find wave no, event id: {}", event.getEventId());
@@ -95,36 +255,47 @@ public class SentrixMobileLabelPrintPlugin implements PrintPlugin {
             }
 
             // Retrieve config and trigger print
-            triggerPrintLabelByWaveNo(waveNo, event);
+            triggerPrintLabelByWaveNo(tenant, waveNo, event, batch, WaveLabelResolution.lazy(() -> loadWaveLabelResolution(tenant, List.of(waveNo))));
+        } else if (PrintNodeEnum.PRINT_NODE_CLICK_REPRINT == event.getPrintNode()) {
+            String parameter = String.valueOf(event.getParameter());
+            String waveNo = printMetrics.recordStage(PrintMetrics.STAGE_SLOT_TO_WAVE, () -> transferToWaveNo(tenant, parameter, workStationId));
+
+            if (StringUtils.isEmpty(waveNo)) {
+                log.warn("Cannot find wave no to reprint, event id: {}", event.getEventId());
+                return;
+            }
+
+            triggerPrintLabelByWaveNo(tenant, waveNo, event, batch, WaveLabelResolution.lazy(() -> loadWaveLabelResolution(tenant, List.of(waveNo))));
         } else if (PrintNodeEnum.PRINT_NODE_DISPATCH_ORDER == event.getPrintNode()) {
             List<String> putWallSlotCodes = (List<String>) event.getParameter();
-            Map<String, String> putWallSlotCodeWaveNoMap = transferToWaveNoMap(putWallSlotCodes, workStationId);
+            Map<String, String> putWallSlotCodeWaveNoMap = printMetrics.recordStage(PrintMetrics.STAGE_SLOT_TO_WAVE,
+                    () -> transferToWaveNoMap(tenant, putWallSlotCodes, workStationId));
             if (CollectionUtils.isEmpty(putWallSlotCodeWaveNoMap)) {
                 log.warn("Cannot find any wave no, event id: {}", event.getEventId());
                 return;
             }
 
-            // 开始按照顺序打印
-            putWallSlotCodes.stream()
+            List<String> waveNos = putWallSlotCodes.stream()
                     .filter(putWallSlotCodeWaveNoMap::containsKey)
-                    .forEach(putWallSlotCode -> {
-                        String waveNo = putWallSlotCodeWaveNoMap.get(putWallSlotCode);
-                        // Retrieve config and trigger print
-                        triggerPrintLabelByWaveNo(waveNo, event);
-                    });
+                    .map(putWallSlotCodeWaveNoMap::get).toList();
+            // 一次查询所有波次的数据
+            Supplier<WaveLabelResolution> resolution = WaveLabelResolution.lazy(() -> loadWaveLabelResolution(tenant, waveNos));
+
+            // 开始按照顺序打印
+            waveNos.forEach(waveNo -> triggerPrintLabelByWaveNo(tenant, waveNo, event, batch, resolution));
         }
     }
 
-    private void triggerSkuLabelPrint(PrintConfig config, List<OutboundCustomLabelDTO> customLabelDTOS) {
+    private void triggerSkuLabelPrint(PrinterEndpoint printer, List<OutboundCustomLabelDTO> customLabelDTOS, PrintBatch batch) {
         if (CollectionUtils.isEmpty(customLabelDTOS)) {
             log.warn("CustomLabels is empty");
             return;
         }
 
-        customLabelDTOS.forEach(labelDTO -> triggerPrint(config, labelDTO.getUrl()));
+        customLabelDTOS.forEach(labelDTO -> triggerPrint(batch, null, LabelTypeEnum.SKU, printer, labelDTO::getUrl));
     }
 
-    private String transferToWaveNo(String parameter, Long workStationId) {
+    private String transferToWaveNo(TenantScope tenant, String parameter, Long workStationId) {
         if (StringUtils.startsWith(parameter, OUTBOUND_WAVE_NO_PREFIX)) {
             return parameter;
         }
@@ -134,11 +305,15 @@ public class SentrixMobileLabelPrintPlugin implements PrintPlugin {
             return null;
         }
 
+        String indexedWaveNo = tenant.slotIndex.findWaveNo(workStationId, parameter);
+        if (indexedWaveNo != null) {
+            return indexedWaveNo;
+        }
+
         PutWallSlotDTO putWallSlot = putWallApi.getPutWallSlot(parameter, workStationId);
         // Check slot status and picking order
-        if (PutWallSlotStatusEnum.BOUND.equals(putWallSlot.getPutWallSlotStatus())
-                || putWallSlot.getPickingOrderId() == null) {
-
+        if (!isPrintableSlot(putWallSlot)) {
+            tenant.slotIndex.unbind(workStationId, parameter);
             log.warn("PutWallSlot not bound or picking order is null, station: {}, slot code: {}, status: {}",
                     workStationId, putWallSlot.getPutWallSlotCode(), putWallSlot.getPutWallSlotStatus());
             return null;
@@ -149,13 +324,15 @@ public class SentrixMobileLabelPrintPlugin implements PrintPlugin {
                 || PickingOrderStatusEnum.isFinalStatues(pickingOrderDTO.getPickingOrderStatus())) {
 
             log.warn("Picking order is null or already finished, order ID: {}", putWallSlot.getPickingOrderId());
+            tenant.slotIndex.unbind(workStationId, parameter);
             return null;
         }
 
+        tenant.slotIndex.bind(workStationId, parameter, pickingOrderDTO.getId(), pickingOrderDTO.getWaveNo());
         return pickingOrderDTO.getWaveNo();
     }
 
-    private Map<String, String> transferToWaveNoMap(List<String> putWallSlotCodes, Long workStationId) {
+    private Map<String, String> transferToWaveNoMap(TenantScope tenant, List<String> putWallSlotCodes, Long workStationId) {
         List<PutWallSlotDTO> putWallSlots = putWallApi.getPutWallSlots(putWallSlotCodes, workStationId);
         Map<Long, String> putWallSlotCodeAndPickingOrderIdMap = putWallSlots.stream()
                 .filter(v -> PutWallSlotStatusEnum.WAITING_BINDING.equals(v.getPutWallSlotStatus()) && v.getPickingOrderId() != null)
@@ -170,134 +347,333 @@ public class SentrixMobileLabelPrintPlugin implements PrintPlugin {
             return Map.of();
         }
 
-        return pickingOrders.stream()
-                .filter(v -> !PickingOrderStatusEnum.isFinalStatues(v.getPickingOrderStatus()))
+        List<PickingOrderDTO> unfinishedPickingOrders = pickingOrders.stream()
+                .filter(v -> !PickingOrderStatusEnum.isFinalStatues(v.getPickingOrderStatus())).toList();
+        unfinishedPickingOrders.forEach(v -> tenant.slotIndex.bind(workStationId,
+                putWallSlotCodeAndPickingOrderIdMap.get(v.getId()), v.getId(), v.getWaveNo()));
+        return unfinishedPickingOrders.stream()
                 .collect(Collectors.toMap(v -> putWallSlotCodeAndPickingOrderIdMap.get(v.getId()), PickingOrderDTO::getWaveNo));
     }
 
     /**
-     * Fetch printer config for a given workstation ID.
+     * Fetch the printer of the workstation of the event from the config snapshot of the event.
      */
-    private PrintConfig getWorkStationPrintConfig(Long workStationId, LabelTypeEnum labelType) {
-        PrintPluginConfig tenantConfig = TenantPluginConfig.getTenantConfig(PLUGIN_ID, PrintPluginConfig.class);
-        Map<LabelTypeEnum, PrintConfig> labelTypePrintConfigMap = tenantConfig.getStationPrintConfig().get(String.valueOf(workStationId));
-        if (labelTypePrintConfigMap == null || labelTypePrintConfigMap.isEmpty()) {
-            log.warn("Cannot find print config for work station: {}", workStationId);
-            return null;
+    private PrinterEndpoint getWorkStationPrinter(PrintConfigSnapshot snapshot, PrintEvent event, LabelTypeEnum labelType) {
+        long workStationId = event.getWorkStationId();
+        PrinterEndpoint printer = snapshot.getPrinter(workStationId, labelType);
+        if (printer != null) {
+            return printer;
         }
-        PrintConfig printConfig = labelTypePrintConfigMap.get(labelType);
-        if (printConfig == null) {
+        printMetrics.countOutcome(PrintMetrics.OUTCOME_SKIPPED_NO_CONFIG, workStationId, labelType, event.getPrintNode());
+        if (!snapshot.hasStation(workStationId)) {
+            log.warn("Cannot find print config for work station: {}", workStationId);
+        } else {
             log.warn("Cannot find print config for station {} label type: {}", workStationId, labelType);
-            return null;
         }
-        return printConfig;
+        return null;
     }
 
     /**
-     * Build a print request DTO and call the external print service.
+     * Build print jobs for the wave and queue them on the station printers.
      */
-    private void triggerPrintLabelByWaveNo(String waveNo, PrintEvent event) {
+    private void triggerPrintLabelByWaveNo(TenantScope tenant, String waveNo, PrintEvent event, PrintBatch batch,
+                                           Supplier<WaveLabelResolution> resolution) {
         if (PrintNodeEnum.PRINT_NODE_CLICK_REPRINT == event.getPrintNode()) {
-            reprint(waveNo, event);
+            reprint(tenant, waveNo, event, batch, resolution);
             return;
         }
 
+        PrintConfigSnapshot snapshot = batch.getConfigSnapshot();
+
         // 打印快递 label
-        String labelPdfUrl = findOrderPdfUrl(waveNo);
-        if (StringUtils.isNotEmpty(labelPdfUrl)) {
-            PrintConfig printConfig = getWorkStationPrintConfig(event.getWorkStationId(), LabelTypeEnum.LABEL);
-            if (printConfig == null) {
+        boolean duplicateLabel = !claimLabel(tenant, event, batch, waveNo, LabelTypeEnum.LABEL);
+        Callable<String> labelPdfUrlResolver = duplicateLabel ? null : resolveLabelPdfUrl(tenant, waveNo, resolution);
+        if (labelPdfUrlResolver != null) {
+            PrinterEndpoint printer = getWorkStationPrinter(snapshot, event, LabelTypeEnum.LABEL);
+            if (printer == null) {
                 return;
             }
-            triggerPrint(printConfig, labelPdfUrl);
+            triggerPrint(batch, waveNo, LabelTypeEnum.LABEL, printer, labelPdfUrlResolver);
+            batch.addDedupKey(PrintDedupWindow.hash(event.getWorkStationId(), waveNo, LabelTypeEnum.LABEL));
+        } else if (!duplicateLabel && isReplenishWave(resolution.get().getOutboundPlanOrders(waveNo))) {
+            printMetrics.countOutcome(PrintMetrics.OUTCOME_SKIPPED_REPLENISH, event.getWorkStationId(), LabelTypeEnum.LABEL, event.getPrintNode());
         }
 
         // 打印 a4 paper
-        String a4PaperUrl = findA4PaperUrl(waveNo);
+        String a4PaperUrl = claimLabel(tenant, event, batch, waveNo, LabelTypeEnum.A4PAPER)
+                ? findA4PaperUrl(tenant, waveNo, resolution) : null;
         if (StringUtils.isNotEmpty(a4PaperUrl)) {
-            PrintConfig printConfig = getWorkStationPrintConfig(event.getWorkStationId(), LabelTypeEnum.A4PAPER);
-            if (printConfig == null) {
+            PrinterEndpoint printer = getWorkStationPrinter(snapshot, event, LabelTypeEnum.A4PAPER);
+            if (printer == null) {
                 return;
             }
-            triggerPrint(printConfig, a4PaperUrl);
+            triggerPrint(batch, waveNo, LabelTypeEnum.A4PAPER, printer, () -> a4PaperUrl);
+            batch.addDedupKey(PrintDedupWindow.hash(event.getWorkStationId(), waveNo, LabelTypeEnum.A4PAPER));
+        }
+        log.info("Queue print label and a4paper for Wave NO: {}", waveNo);
+    }
+
+    /**
+     * Drop an event already handled or being handled within the dedup window, e.g. retried upstream. Otherwise the
+     * event is claimed in the window. Reprints always print.
+     */
+    private boolean isDuplicateEvent(TenantScope tenant, PrintEvent event) {
+        if (!isEventDeduplicated(tenant, event) || tenant.dedupWindow.tryClaim(PrintDedupWindow.hash(String.valueOf(event.getEventId())),
+                tenant.snapshot.getPluginConfig().getPrintDedupWindowMillis())) {
+            return false;
+        }
+        printMetrics.countOutcome(PrintMetrics.OUTCOME_SKIPPED_DUPLICATE, event.getWorkStationId(), event.getLabelType(), event.getPrintNode());
+        log.info("Skip duplicate print event, event id: {}", event.getEventId());
+        return true;
+    }
+
+    private boolean isEventDeduplicated(TenantScope tenant, PrintEvent event) {
+        return tenant.snapshot.getPluginConfig().getPrintDedupWindowMillis() > 0 && event.getEventId() != null
+                && PrintNodeEnum.PRINT_NODE_CLICK_REPRINT != event.getPrintNode();
+    }
+
+    /**
+     * Claim the label of the wave for the station in the dedup window.
+     *
+     * @return false if the label was already queued or is being queued within the dedup window or by this event, e.g.
+     * the slot was scanned twice
+     */
+    private boolean claimLabel(TenantScope tenant, PrintEvent event, PrintBatch batch, String waveNo, LabelTypeEnum labelType) {
+        long windowMillis = tenant.snapshot.getPluginConfig().getPrintDedupWindowMillis();
+        if (windowMillis <= 0) {
+            return true;
+        }
+        long keyHash = PrintDedupWindow.hash(event.getWorkStationId(), waveNo, labelType);
+        if (tenant.dedupWindow.tryClaim(keyHash, windowMillis)) {
+            batch.addClaimedDedupKey(keyHash);
+            return true;
+        }
+        printMetrics.countOutcome(PrintMetrics.OUTCOME_SKIPPED_DUPLICATE, event.getWorkStationId(), labelType, event.getPrintNode());
+        log.info("Skip duplicate label, station: {}, wave no: {}, label type: {}", event.getWorkStationId(), waveNo, labelType);
+        return false;
+    }
+
+    /**
+     * Once the print jobs of the event are queued, confirm the claims of the labels queued by the event, and of the
+     * event itself if it was handled completely. The other claims are released, so an event that failed is printed
+     * when it is retried.
+     */
+    private void settleDedupKeys(TenantScope tenant, PrintEvent event, PrintBatch batch, boolean collected, boolean submitted) {
+        long windowMillis = tenant.snapshot.getPluginConfig().getPrintDedupWindowMillis();
+        if (windowMillis <= 0) {
+            return;
+        }
+        Set<Long> queuedKeys = submitted ? new HashSet<>(batch.getDedupKeys()) : Set.of();
+        batch.getClaimedDedupKeys().forEach(keyHash -> {
+            if (queuedKeys.contains(keyHash)) {
+                tenant.dedupWindow.record(keyHash, windowMillis);
+            } else {
+                tenant.dedupWindow.release(keyHash);
+            }
+        });
+        if (isEventDeduplicated(tenant, event)) {
+            long eventKeyHash = PrintDedupWindow.hash(String.valueOf(event.getEventId()));
+            if (collected && submitted) {
+                tenant.dedupWindow.record(eventKeyHash, windowMillis);
+            } else {
+                tenant.dedupWindow.release(eventKeyHash);
+            }
         }
-        log.info("Print label and a4paper for Wave NO: {}", waveNo);
     }
 
-    private void reprint(String waveNo, PrintEvent event) {
+    private void reprint(TenantScope tenant, String waveNo, PrintEvent event, PrintBatch batch,
+                         Supplier<WaveLabelResolution> resolution) {
         // Retrieve config and trigger print
-        PrintConfig printConfig = getWorkStationPrintConfig(event.getWorkStationId(), event.getLabelType());
-        if (printConfig == null) {
+        PrintConfigSnapshot snapshot = batch.getConfigSnapshot();
+        PrinterEndpoint printer = getWorkStationPrinter(snapshot, event, event.getLabelType());
+        if (printer == null) {
             return;
         }
-        String pdfUrl;
+        Callable<String> pdfUrlResolver;
         if (LabelTypeEnum.LABEL == event.getLabelType()) {
-            pdfUrl = findOrderPdfUrl(waveNo);
+            pdfUrlResolver = resolveLabelPdfUrl(tenant, waveNo, resolution);
         } else {
-            pdfUrl = findA4PaperUrl(waveNo);
+            String a4PaperUrl = findA4PaperUrl(tenant, waveNo, resolution);
+            pdfUrlResolver = StringUtils.isEmpty(a4PaperUrl) ? null : () -> a4PaperUrl;
         }
 
-        if (StringUtils.isEmpty(pdfUrl)) {
-            log.warn("Cannot find pdfUrl for Wave NO: {} for printer: {}", waveNo, printConfig.getPrintName());
+        if (pdfUrlResolver == null) {
+            log.warn("Cannot find pdfUrl for Wave NO: {} for printer: {}", waveNo, printer.getPrintName());
             return;
         }
-        triggerPrint(printConfig, pdfUrl);
+        triggerPrint(batch, waveNo, event.getLabelType(), printer, pdfUrlResolver);
 
-        log.info("Reprint label for Wave NO: {}, label type: {}", waveNo, event.getLabelType());
+        log.info("Queue reprint label for Wave NO: {}, label type: {}", waveNo, event.getLabelType());
     }
 
-    private String buildPrintUrl(PrintConfig config) {
-        return PRINT_URL
-                .replace("$host", config.getHost())
-                .replace("$port", String.valueOf(config.getPort()));
+    /**
+     * Add a document to the print batch of the event, the pdf url is resolved and printed off the event thread.
+     */
+    private void triggerPrint(PrintBatch batch, String waveNo, LabelTypeEnum labelType, PrinterEndpoint printer,
+                              Callable<String> pdfUrlResolver) {
+        batch.add(printer, new PrintDocument(waveNo, labelType, pdfUrlResolver));
     }
 
-    private void triggerPrint(PrintConfig config, String pdfUrl) {
-        String printURL = buildPrintUrl(config);
+    private void sendPrintRequest(PrintJob job, List<PrintDocument> documents) {
+        PrinterEndpoint printer = job.getTarget();
+        List<PrintRequestDTO.Data> data = documents.stream().map(document -> buildPrintData(job, document)).toList();
 
-        PrintRequestDTO requestDTO = buildPrintRequestDTO(config.getPrintName(), pdfUrl);
+        PrintRequestDTO requestDTO = buildPrintRequestDTO(printer.getPrintName(), data);
         if (requestDTO == null) {
-            log.error("Failed to build PrintRequestDTO, skipping print. pdf url: {}", pdfUrl);
+            log.error("Failed to build PrintRequestDTO, skipping print. pdf urls: {}",
+                    documents.stream().map(PrintDocument::getPdfUrl).toList());
             return;
         }
 
-        RestTemplate template = new RestTemplate();
-        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-        requestFactory.setConnectTimeout(1000); // Connection timeout in milliseconds
-        requestFactory.setReadTimeout(5000);    // Read timeout in milliseconds
-        template.setRequestFactory(requestFactory);
-
+        RestTemplate template = httpClient.getRestTemplate(job.getPrintServerClientConfig());
         HttpEntity<String> entity = new HttpEntity<>(JsonUtils.obj2String(requestDTO));
-        try {
-            template.postForLocation(printURL, entity);
-        } catch (ResourceAccessException e) {
-            log.error("Failed to request printer, skipping print. pdf url: {}", pdfUrl);
-        }
+        template.postForLocation(printer.getPrintUri(), entity);
     }
 
     /**
-     * Construct the print request DTO with printer name and PDF data.
+     * Construct the print request DTO with printer name and PDF data, one data entry per document in print order.
      */
-    private PrintRequestDTO buildPrintRequestDTO(String printName, String pdfUrl) {
+    private PrintRequestDTO buildPrintRequestDTO(String printName, List<PrintRequestDTO.Data> data) {
         PrintRequestDTO.Printer print = PrintRequestDTO.Printer.builder().name(printName).build();
         PrintRequestDTO.Options options = PrintRequestDTO.Options.builder().build();
 
-        PrintRequestDTO.Data data = PrintRequestDTO.Data.builder().data(pdfUrl).build();
+        return PrintRequestDTO.builder().printer(print).options(options).data(data).build();
+    }
+
+    /**
+     * The pdf content from the local spool in spool mode, otherwise the pdf url for the print server to download.
+     */
+    private PrintRequestDTO.Data buildPrintData(PrintJob job, PrintDocument document) {
+        PdfSpoolCache pdfSpoolCache = job.isSpoolPdf() ? getPdfSpoolCache(job.getPdfSpoolDir()) : null;
+        if (pdfSpoolCache != null) {
+            try {
+                String content = pdfSpoolCache.getBase64(document.getPdfUrl(),
+                        pdfUrl -> downloadPdf(pdfUrl, job.getLabelServiceClientConfig()));
+                return PrintRequestDTO.Data.builder().flavor(PRINT_FLAVOR_BASE64).data(content).build();
+            } catch (Exception e) {
+                // 下载失败时仍交给打印服务自己下载
+                log.warn("Failed to spool pdf, send pdf url to print server, pdf url: {}", document.getPdfUrl(), e);
+            }
+        }
+        return PrintRequestDTO.Data.builder().data(document.getPdfUrl()).build();
+    }
+
+    /**
+     * @return null if no spool directory is configured
+     */
+    private PdfSpoolCache getPdfSpoolCache(String pdfSpoolDir) {
+        if (StringUtils.isBlank(pdfSpoolDir)) {
+            return null;
+        }
+        return pdfSpoolCaches.computeIfAbsent(Path.of(pdfSpoolDir).toAbsolutePath().normalize(),
+                directory -> new PdfSpoolCache(directory, PDF_SPOOL_MAX_BYTES));
+    }
 
-        return PrintRequestDTO.builder().printer(print).options(options).data(List.of(data)).build();
+    private byte[] downloadPdf(String pdfUrl, HttpClientConfig config) {
+        return httpClient.getRestTemplate(config).getForObject(pdfUrl, byte[].class);
     }
 
     /**
-     * Look up the PDF URL for the given picking order.
+     * Load the plan orders, picking orders and transfer container records of all the waves of one event.
      */
-    private String findOrderPdfUrl(String waveNo) {
-        List<OutboundPlanOrderDTO> outboundPlanOrders = outboundPlanOrderApi.findByWaveNos(
-                List.of(waveNo), false);
+    private WaveLabelResolution loadWaveLabelResolution(TenantScope tenant, Collection<String> waveNos) {
+        return printMetrics.recordStage(PrintMetrics.STAGE_WAVE_QUERY, () -> queryWaveLabelResolution(tenant, waveNos));
+    }
+
+    private WaveLabelResolution queryWaveLabelResolution(TenantScope tenant, Collection<String> waveNos) {
+        Set<String> distinctWaveNos = new LinkedHashSet<>(waveNos);
+
+        Map<String, List<OutboundPlanOrderDTO>> waveOutboundPlanOrders = outboundPlanOrderApi
+                .findByWaveNos(new ArrayList<>(distinctWaveNos), false).stream()
+                .collect(Collectors.groupingBy(OutboundPlanOrderDTO::getWaveNo));
+
+        // 拣选单接口没有按多个波次查询的方法，每个波次只查一次
+        Map<Long, String> pickingOrderWaveNoMap = new HashMap<>();
+        distinctWaveNos.forEach(waveNo -> pickingOrderApi.findPickingOrderByWaveNo(waveNo)
+                .forEach(pickingOrder -> pickingOrderWaveNoMap.put(pickingOrder.getId(), waveNo)));
+
+        Map<String, List<TransferContainerRecordDTO>> waveTransferContainerRecords = pickingOrderWaveNoMap.isEmpty()
+                ? Map.of()
+                : transferContainerApi.findByPickingOrderIds(new ArrayList<>(pickingOrderWaveNoMap.keySet())).stream()
+                .filter(v -> pickingOrderWaveNoMap.containsKey(v.getPickingOrderId()))
+                .collect(Collectors.groupingBy(v -> pickingOrderWaveNoMap.get(v.getPickingOrderId())));
+
+        // 已经缓存了 A4 url 的波次不用再查
+        Map<String, Boolean> waveHasA4PdfUrl = distinctWaveNos.stream()
+                .filter(waveNo -> tenant.pdfUrlCache.get(waveNo, LabelTypeEnum.A4PAPER) == null)
+                .collect(Collectors.toMap(Function.identity(), transferContainerApi::assertWaveHasA4PdfUrl));
+
+        return new WaveLabelResolution(waveOutboundPlanOrders, waveTransferContainerRecords, waveHasA4PdfUrl);
+    }
+
+    /**
+     * Resolve the label PDF URL of the wave, from the cache if it was already resolved for the current split state.
+     * <p>
+     * On a cache miss the label service is requested at once on the resolve executor, so the waves of one event are
+     * requested concurrently while their documents keep the print order.
+     */
+    private Callable<String> resolveLabelPdfUrl(TenantScope tenant, String waveNo, Supplier<WaveLabelResolution> resolution) {
+        String knownPdfUrl = findKnownLabelPdfUrl(tenant, waveNo);
+        if (knownPdfUrl != null) {
+            log.debug("Hit known label pdf url, wave no: {}", waveNo);
+            return () -> knownPdfUrl;
+        }
+
+        LabelRequest labelRequest = findOrderPdfRequest(waveNo, tenant.snapshot, resolution.get());
+        if (labelRequest == null) {
+            return null;
+        }
+
+        tenant.pdfUrlCache.updateSplitState(waveNo, labelRequest.splitState());
+        String cachedPdfUrl = tenant.pdfUrlCache.get(waveNo, LabelTypeEnum.LABEL, labelRequest.splitState());
+        if (cachedPdfUrl != null) {
+            log.debug("Hit cached label pdf url, wave no: {}, split state: {}", waveNo, labelRequest.splitState());
+            return () -> cachedPdfUrl;
+        }
+
+        CompletableFuture<String> pdfUrlFuture = CompletableFuture.supplyAsync(
+                () -> requestAndCacheOrderPdfUrl(tenant, waveNo, labelRequest), labelResolveExecutor);
+        AtomicBoolean firstAttempt = new AtomicBoolean(true);
+        // 重试时直接重新请求
+        return () -> firstAttempt.getAndSet(false)
+                ? pdfUrlFuture.get()
+                : requestAndCacheOrderPdfUrl(tenant, waveNo, labelRequest);
+    }
+
+    /**
+     * The cached label PDF URL of the wave, when its split state is known without querying WMS: the split is finished
+     * and does not change anymore, or the split state was checked within the max age of the slot index bindings.
+     *
+     * @return null if the split state has to be checked
+     */
+    private String findKnownLabelPdfUrl(TenantScope tenant, String waveNo) {
+        BooleanPair splitState = tenant.pdfUrlCache.getSplitState(waveNo);
+        if (splitState == null || !splitState.isSplitFinished
+                && !tenant.pdfUrlCache.isSplitStateReportedWithin(waveNo, tenant.slotIndex.getMaxAgeMillis())) {
+            return null;
+        }
+        return tenant.pdfUrlCache.get(waveNo, LabelTypeEnum.LABEL, splitState);
+    }
+
+    private String requestAndCacheOrderPdfUrl(TenantScope tenant, String waveNo, LabelRequest labelRequest) {
+        // label 服务每次请求都会重新生成 pdf，之前缓存的 url 不再使用
+        tenant.pdfUrlCache.invalidate(waveNo, LabelTypeEnum.LABEL);
+        String pdfUrl = printMetrics.recordStage(PrintMetrics.STAGE_LABEL_PDF_URL,
+                () -> requestOrderPdfUrl(waveNo, labelRequest.requestUrl(), tenant.snapshot.getPluginConfig()));
+        if (StringUtils.isNotEmpty(pdfUrl)) {
+            tenant.pdfUrlCache.put(waveNo, LabelTypeEnum.LABEL, labelRequest.splitState(), pdfUrl);
+        }
+        return pdfUrl;
+    }
+
+    /**
+     * Look up the label service request for the PDF of the given wave.
+     */
+    private LabelRequest findOrderPdfRequest(String waveNo, PrintConfigSnapshot snapshot, WaveLabelResolution resolution) {
+        List<OutboundPlanOrderDTO> outboundPlanOrders = resolution.getOutboundPlanOrders(waveNo);
 
         // If no plan orders found or it is a replenish order, return null
-        if (CollectionUtils.isEmpty(outboundPlanOrders)
-                || outboundPlanOrders.stream().anyMatch(o ->
-                OutboundOrderInnerTypeEnum.REPLENISH_OUTBOUND_ORDER.name().equals(o.getCustomerOrderType()))) {
+        if (CollectionUtils.isEmpty(outboundPlanOrders) || isReplenishWave(outboundPlanOrders)) {
 
             log.info("No valid outbound plan orders or is a refill order, skipping label print.");
             return null;
@@ -306,10 +682,8 @@ public class SentrixMobileLabelPrintPlugin implements PrintPlugin {
         boolean isParentWave = outboundPlanOrders.stream()
                 .anyMatch(v -> v.getCustomerOrderNo().equals(v.getCustomerWaveNo()));
 
-        List<Long> pickingOrderIds = pickingOrderApi.findPickingOrderByWaveNo(waveNo).stream()
-                .map(PickingOrderDTO::getId).toList();
-        // Retrieve container records for the current picking order
-        List<TransferContainerRecordDTO> containerRecords = transferContainerApi.findByPickingOrderIds(pickingOrderIds);
+        // Container records for the picking orders of the wave
+        List<TransferContainerRecordDTO> containerRecords = resolution.getTransferContainerRecords(waveNo);
 
         boolean isSplitFinished = containerRecords.stream()
                 .anyMatch(v -> v.getTransferContainerStatus()
@@ -320,21 +694,31 @@ public class SentrixMobileLabelPrintPlugin implements PrintPlugin {
         String customerOrderNo = outboundPlanOrderDTO.getCustomerOrderNo();
 
         // Generate the request URL for fetching PDF
-        PrintPluginConfig config = getPrintPluginConfig();
         BooleanPair pair = BooleanPair.valueOf(isParentWave, isSplitFinished);
-        String requestUrl = resolveRequestUrl(pair, customerWaveNo, customerOrderNo, config);
+        String requestUrl = resolveRequestUrl(pair, customerWaveNo, customerOrderNo, snapshot);
         if (StringUtils.isEmpty(requestUrl)) {
             log.warn("Cannot resolve PDF URL; Wave NO: {}", waveNo);
             return null;
         }
+        return new LabelRequest(requestUrl, pair);
+    }
+
+    private boolean isReplenishWave(List<OutboundPlanOrderDTO> outboundPlanOrders) {
+        return outboundPlanOrders != null && outboundPlanOrders.stream().anyMatch(o ->
+                OutboundOrderInnerTypeEnum.REPLENISH_OUTBOUND_ORDER.name().equals(o.getCustomerOrderType()));
+    }
 
-        log.debug("try get pdf url for wave no: {}, customer wave no: {}, requestUrl: {}", waveNo, customerWaveNo, requestUrl);
+    /**
+     * Request the PDF URL from the label service.
+     */
+    private String requestOrderPdfUrl(String waveNo, String requestUrl, PrintPluginConfig config) {
+        log.debug("try get pdf url for wave no: {}, requestUrl: {}", waveNo, requestUrl);
 
         HttpHeaders headers = new HttpHeaders();
         headers.add("Authorization", config.getAuthorization());
         headers.add("Content-Type", "application/json");
 
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = httpClient.getRestTemplate(config.getLabelServiceClientConfig());
         ResponseEntity<PdfUrlResponse> response = restTemplate.exchange(
                 requestUrl,
                 HttpMethod.GET,
@@ -351,43 +735,219 @@ public class SentrixMobileLabelPrintPlugin implements PrintPlugin {
             return null;
         }
 
-        log.debug("successful get label pdf url, wave no : {}, customer wave no : {} : {}", waveNo, customerWaveNo, body.getUrl());
+        log.debug("successful get label pdf url, wave no : {}, requestUrl : {} : {}", waveNo, requestUrl, body.getUrl());
 
         return body.getUrl();
     }
 
-    private String findA4PaperUrl(String waveNo) {
-        boolean hasA4PdfUrl = transferContainerApi.assertWaveHasA4PdfUrl(waveNo);
+    private String findA4PaperUrl(TenantScope tenant, String waveNo, Supplier<WaveLabelResolution> resolution) {
+        return printMetrics.recordStage(PrintMetrics.STAGE_A4_PAPER_URL, () -> queryA4PaperUrl(tenant, waveNo, resolution));
+    }
+
+    private String queryA4PaperUrl(TenantScope tenant, String waveNo, Supplier<WaveLabelResolution> resolution) {
+        String cachedA4PaperUrl = tenant.pdfUrlCache.get(waveNo, LabelTypeEnum.A4PAPER);
+        if (cachedA4PaperUrl != null) {
+            return StringUtils.isEmpty(cachedA4PaperUrl) ? null : cachedA4PaperUrl;
+        }
+
+        boolean hasA4PdfUrl = resolution.get().hasA4PdfUrl(waveNo);
         if (!hasA4PdfUrl) {
             log.info("No A4Paper found for Wave NO: {}", waveNo);
+            // 没有 A4 的波次也缓存下来，再次扫描时不用再查询
+            tenant.pdfUrlCache.put(waveNo, LabelTypeEnum.A4PAPER, null, "");
             return null;
         }
 
-        List<OutboundPlanOrderDTO> outboundPlanOrderDTOS = outboundPlanOrderApi.findByWaveNos(List.of(waveNo), false);
+        List<OutboundPlanOrderDTO> outboundPlanOrderDTOS = resolution.get().getOutboundPlanOrders(waveNo);
         if (CollectionUtils.isEmpty(outboundPlanOrderDTOS)) {
             log.warn("Cannot find outbound order for wave no: {}", waveNo);
             return null;
         }
 
-        return outboundPlanOrderDTOS.stream()
+        String a4PaperUrl = outboundPlanOrderDTOS.stream()
                 .map(OutboundPlanOrderDTO::getA4Paper)
                 .filter(StringUtils::isNotEmpty)
                 .findFirst().orElse(null);
+        if (a4PaperUrl != null) {
+            tenant.pdfUrlCache.put(waveNo, LabelTypeEnum.A4PAPER, null, a4PaperUrl);
+        }
+        return a4PaperUrl;
     }
 
-    private PrintPluginConfig getPrintPluginConfig() {
-        return TenantPluginConfig.getTenantConfig(PLUGIN_ID, PrintPluginConfig.class);
+    /**
+     * Picking orders bound to the put wall slots of the stations that have print config.
+     */
+    private Collection<Long> findBoundPickingOrderIds(TenantScope tenant) {
+        if (tenant.slotIndex.isEnabled()) {
+            return tenant.slotIndex.getPickingOrderIds();
+        }
+        PrintConfigSnapshot snapshot = tenant.snapshot;
+        return putWallApi.findAllPutWallDTO().stream()
+                .filter(PutWallDTO::isEnable)
+                .filter(v -> v.getWorkStationId() != null && snapshot.hasStation(v.getWorkStationId()))
+                .flatMap(v -> v.getPutWallSlots().stream())
+                .map(PutWallSlotDTO::getPickingOrderId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
     }
 
-    private String resolveRequestUrl(BooleanPair pair, String customerWaveNo, String customerOrderNo, PrintPluginConfig config) {
+    private Map<Long, String> findUnfinishedWaveNos(TenantScope tenant, Set<Long> pickingOrderIds) {
+        if (tenant.slotIndex.isEnabled()) {
+            return tenant.slotIndex.getWaveNos(pickingOrderIds);
+        }
+        return pickingOrderApi.findOrderByPickingOrderIds(pickingOrderIds).stream()
+                .filter(v -> !PickingOrderStatusEnum.isFinalStatues(v.getPickingOrderStatus()) && v.getWaveNo() != null)
+                .collect(Collectors.toMap(PickingOrderDTO::getId, PickingOrderDTO::getWaveNo));
+    }
+
+    /**
+     * A slot can be printed at location scan if it is not in bound status and has a picking order.
+     */
+    private boolean isPrintableSlot(PutWallSlotDTO putWallSlot) {
+        return !PutWallSlotStatusEnum.BOUND.equals(putWallSlot.getPutWallSlotStatus()) && putWallSlot.getPickingOrderId() != null;
+    }
+
+    /**
+     * Bindings of the printable slots of the stations with print config to unfinished picking orders.
+     */
+    private Collection<PutWallSlotIndex.SlotBinding> loadSlotBindings(PrintConfigSnapshot snapshot) {
+        long loadedTime = System.currentTimeMillis();
+        Map<Long, Long> pickingOrderStationIds = new HashMap<>();
+        Map<Long, String> pickingOrderSlotCodes = new HashMap<>();
+        putWallApi.findAllPutWallDTO().stream()
+                .filter(PutWallDTO::isEnable)
+                .filter(v -> v.getWorkStationId() != null && snapshot.hasStation(v.getWorkStationId()))
+                .forEach(putWall -> putWall.getPutWallSlots().stream()
+                        .filter(this::isPrintableSlot)
+                        .forEach(slot -> {
+                            pickingOrderStationIds.put(slot.getPickingOrderId(), putWall.getWorkStationId());
+                            pickingOrderSlotCodes.put(slot.getPickingOrderId(), slot.getPutWallSlotCode());
+                        }));
+        if (pickingOrderStationIds.isEmpty()) {
+            return List.of();
+        }
+
+        return pickingOrderApi.findOrderByPickingOrderIds(pickingOrderStationIds.keySet()).stream()
+                .filter(v -> !PickingOrderStatusEnum.isFinalStatues(v.getPickingOrderStatus()))
+                .map(v -> new PutWallSlotIndex.SlotBinding(pickingOrderStationIds.get(v.getId()),
+                        pickingOrderSlotCodes.get(v.getId()), v.getId(), v.getWaveNo(), loadedTime))
+                .toList();
+    }
+
+    /**
+     * Resolve the label and a4 paper urls of the wave into the pdf url cache, and download the pdfs into the local
+     * spool in spool mode.
+     *
+     * @return false if a step failed and the wave should be prefetched again
+     */
+    private boolean warmWaveLabels(TenantScope tenant, String waveNo) {
+        PrintConfigSnapshot snapshot = tenant.snapshot;
+        Supplier<WaveLabelResolution> resolution = WaveLabelResolution.lazy(() -> loadWaveLabelResolution(tenant, List.of(waveNo)));
+        Callable<String> labelPdfUrlResolver = resolveLabelPdfUrl(tenant, waveNo, resolution);
+        boolean warmed = true;
+        String labelPdfUrl = null;
+        if (labelPdfUrlResolver != null) {
+            try {
+                labelPdfUrl = labelPdfUrlResolver.call();
+            } catch (Exception e) {
+                log.warn("Prefetch label pdf url failed, wave no: {}", waveNo, e);
+                warmed = false;
+            }
+        }
+        String a4PaperUrl = findA4PaperUrl(tenant, waveNo, resolution);
+
+        if (snapshot.getPluginConfig().isPdfSpoolEnabled()) {
+            PdfSpoolCache pdfSpoolCache = getPdfSpoolCache(snapshot.getPluginConfig().getPdfSpoolDir());
+            HttpClientConfig labelServiceClientConfig = snapshot.getPluginConfig().getLabelServiceClientConfig();
+            warmed &= warmPdfSpool(pdfSpoolCache, waveNo, labelPdfUrl, labelServiceClientConfig);
+            warmed &= warmPdfSpool(pdfSpoolCache, waveNo, a4PaperUrl, labelServiceClientConfig);
+        }
+        return warmed;
+    }
+
+    private boolean warmPdfSpool(PdfSpoolCache pdfSpoolCache, String waveNo, String pdfUrl, HttpClientConfig config) {
+        if (pdfSpoolCache == null || StringUtils.isEmpty(pdfUrl)) {
+            return true;
+        }
+        try {
+            pdfSpoolCache.warm(pdfUrl, v -> downloadPdf(v, config));
+            return true;
+        } catch (Exception e) {
+            log.warn("Prefetch pdf into spool failed, wave no: {}, pdf url: {}", waveNo, pdfUrl, e);
+            return false;
+        }
+    }
+
+    private String resolveRequestUrl(BooleanPair pair, String customerWaveNo, String customerOrderNo, PrintConfigSnapshot snapshot) {
         return switch (pair) {
-            case TRUE_FALSE -> config.getFirstLabelUrl().replace("$customerWaveNo", customerWaveNo);
-            case TRUE_TRUE -> config.getSplitUrl().replace("$customerWaveNo", customerWaveNo);
-            case FALSE_TRUE -> config.getAddToSplitUrl().replace("$customerOrderNo", customerOrderNo);
-            case FALSE_FALSE -> config.getAddToLabelUrl().replace("$customerOrderNo", customerOrderNo);
+            case TRUE_FALSE -> snapshot.getFirstLabelUrl().expand(customerWaveNo);
+            case TRUE_TRUE -> snapshot.getSplitUrl().expand(customerWaveNo);
+            case FALSE_TRUE -> snapshot.getAddToSplitUrl().expand(customerOrderNo);
+            case FALSE_FALSE -> snapshot.getAddToLabelUrl().expand(customerOrderNo);
         };
     }
 
+    private record LabelRequest(String requestUrl, BooleanPair splitState) {
+    }
+
+    /**
+     * State of one tenant, built from its print config: the url cache, dedup window, slot index and prefetcher never
+     * see the waves and stations of another tenant.
+     */
+    private class TenantScope {
+        private volatile PrintConfigSnapshot snapshot;
+        private final PdfUrlCache<BooleanPair> pdfUrlCache = new PdfUrlCache<>(PDF_URL_CACHE_MAX_WAVES, PDF_URL_CACHE_EXPIRE_MILLIS);
+        private final PrintDedupWindow dedupWindow = new PrintDedupWindow(PRINT_DEDUP_CAPACITY);
+        private volatile PutWallSlotIndex slotIndex;
+        private final LabelPrefetcher prefetcher;
+        private volatile ThreadContextSnapshot context;
+
+        private TenantScope(PrintConfigSnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.slotIndex = newSlotIndex(snapshot.getPluginConfig().isSlotIndexEnabled());
+            this.prefetcher = new LabelPrefetcher(PREFETCH_INTERVAL_MILLIS, backgroundScheduler, prefetchExecutor,
+                    () -> this.snapshot.getPluginConfig().isPrefetchEnabled(), () -> findBoundPickingOrderIds(this),
+                    pickingOrderIds -> findUnfinishedWaveNos(this, pickingOrderIds), waveNo -> warmWaveLabels(this, waveNo));
+        }
+
+        private PutWallSlotIndex newSlotIndex(boolean enabled) {
+            PutWallSlotIndex index = new PutWallSlotIndex(SLOT_INDEX_REFRESH_MILLIS, backgroundScheduler, enabled,
+                    () -> loadSlotBindings(snapshot), Metrics.globalRegistry);
+            if (context != null) {
+                index.useContext(context);
+            }
+            return index;
+        }
+
+        /**
+         * Swap in the snapshot of the changed config of the tenant, the caches and the dedup window are kept. The slot
+         * index is rebuilt only if it was switched on or off.
+         */
+        private void useSnapshot(PrintConfigSnapshot snapshot) {
+            boolean slotIndexEnabled = snapshot.getPluginConfig().isSlotIndexEnabled();
+            this.snapshot = snapshot;
+            if (slotIndex.isEnabled() != slotIndexEnabled) {
+                PutWallSlotIndex previous = slotIndex;
+                slotIndex = newSlotIndex(slotIndexEnabled);
+                previous.shutdown();
+            }
+        }
+
+        /**
+         * Background polls of the tenant run with the context of its latest print event.
+         */
+        private void useContext(ThreadContextSnapshot context) {
+            this.context = context;
+            prefetcher.useContext(context);
+            slotIndex.useContext(context);
+        }
+
+        private void close() {
+            prefetcher.shutdown();
+            slotIndex.shutdown();
+        }
+    }
+
     @AllArgsConstructor
     private enum BooleanPair {
         // 首波次，包含父单拆箱后的
@@ -0,0 +1,208 @@
+package com.swms.plugins.print.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Bounded on-disk cache of downloaded pdf files by pdf url, evicting the least recently used files once the total
+ * size exceeds {@code maxBytes}.
+ * <p>
+ * Files are named by the sha-256 of their url and are picked up again after a restart, so spooled documents can still
+ * be printed while the label service is unavailable. Files are read through a memory mapping. Temp files left behind by
+ * downloads interrupted by a crash are deleted on startup.
+ */
+@Slf4j
+public class PdfSpoolCache {
+
+    private static final String FILE_SUFFIX = ".pdf";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    // 超过该时间的临时文件不是正在进行的下载，可以删除
+    private static final long STALE_TEMP_FILE_MILLIS = 60 * 1000L;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // file name >>> file size, in access order, guarded by this
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public PdfSpoolCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        loadSpooledFiles();
+    }
+
+    /**
+     * Get the pdf of the url as base64, downloading it into the spool on a miss.
+     */
+    public String getBase64(String pdfUrl, PdfDownloader downloader) throws IOException {
+        String fileName = fileName(pdfUrl);
+        String base64 = readBase64(fileName);
+        if (base64 != null) {
+            return base64;
+        }
+
+        byte[] content = downloader.download(pdfUrl);
+        if (content == null || content.length == 0) {
+            throw new IOException("Downloaded empty pdf, url: " + pdfUrl);
+        }
+        write(fileName, content);
+        return Base64.getEncoder().encodeToString(content);
+    }
+
+    /**
+     * Download the pdf of the url into the spool if it is not spooled yet.
+     */
+    public void warm(String pdfUrl, PdfDownloader downloader) throws IOException {
+        String fileName = fileName(pdfUrl);
+        synchronized (this) {
+            if (files.containsKey(fileName)) {
+                return;
+            }
+        }
+        byte[] content = downloader.download(pdfUrl);
+        if (content != null && content.length > 0) {
+            write(fileName, content);
+        }
+    }
+
+    private String readBase64(String fileName) {
+        synchronized (this) {
+            if (files.get(fileName) == null) {
+                return null;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(fileName), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer encoded = Base64.getEncoder().encode(buffer);
+            return StandardCharsets.ISO_8859_1.decode(encoded).toString();
+        } catch (IOException e) {
+            // 文件被删除或损坏，重新下载
+            log.warn("Failed to read spooled pdf, file: {}", fileName, e);
+            remove(fileName);
+            return null;
+        }
+    }
+
+    private void write(String fileName, byte[] content) throws IOException {
+        Files.createDirectories(directory);
+        Path tempFile = Files.createTempFile(directory, fileName, TEMP_FILE_SUFFIX);
+        try {
+            Files.write(tempFile, content);
+            Files.move(tempFile, directory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        synchronized (this) {
+            Long previousSize = files.put(fileName, (long) content.length);
+            totalBytes += content.length - (previousSize == null ? 0 : previousSize);
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            deleteQuietly(eldest.getKey());
+        }
+    }
+
+    private synchronized void remove(String fileName) {
+        Long size = files.remove(fileName);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        deleteQuietly(fileName);
+    }
+
+    private void deleteQuietly(String fileName) {
+        try {
+            Files.deleteIfExists(directory.resolve(fileName));
+        } catch (IOException e) {
+            log.warn("Failed to delete spooled pdf, file: {}", fileName, e);
+        }
+    }
+
+    private synchronized void loadSpooledFiles() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        deleteStaleTempFiles();
+        try (Stream<Path> paths = Files.list(directory)) {
+            List<Path> spooledFiles = paths.filter(v -> v.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .sorted(Comparator.comparing(PdfSpoolCache::lastModifiedTime))
+                    .toList();
+            for (Path file : spooledFiles) {
+                long size = Files.size(file);
+                files.put(file.getFileName().toString(), size);
+                totalBytes += size;
+            }
+            evict();
+            log.info("Loaded {} spooled pdf files, total bytes: {}", files.size(), totalBytes);
+        } catch (IOException e) {
+            log.warn("Failed to load spooled pdf files, directory: {}", directory, e);
+        }
+    }
+
+    private void deleteStaleTempFiles() {
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_FILE_MILLIS;
+        try (Stream<Path> paths = Files.list(directory)) {
+            List<Path> staleFiles = paths.filter(v -> v.getFileName().toString().endsWith(TEMP_FILE_SUFFIX))
+                    .filter(v -> lastModifiedTime(v) < staleBefore)
+                    .toList();
+            staleFiles.forEach(v -> deleteQuietly(v.getFileName().toString()));
+            if (!staleFiles.isEmpty()) {
+                log.info("Deleted {} stale spool temp files, directory: {}", staleFiles.size(), directory);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to delete stale spool temp files, directory: {}", directory, e);
+        }
+    }
+
+    private static long lastModifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String fileName(String pdfUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(pdfUrl.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest) + FILE_SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface PdfDownloader {
+        byte[] download(String pdfUrl) throws IOException;
+    }
+}
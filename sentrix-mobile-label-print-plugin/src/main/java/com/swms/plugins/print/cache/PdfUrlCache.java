@@ -0,0 +1,125 @@
+package com.swms.plugins.print.cache;
+
+import com.swms.wms.api.printer.constants.LabelTypeEnum;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache of resolved pdf urls by wave no, label type and the split state of the wave.
+ * <p>
+ * Every wave remembers the split state its urls were resolved for; when a different split state is reported for the
+ * wave, e.g. after a transfer container was sealed, all of its urls are dropped. The time the split state was last
+ * reported is kept too, so a recently reported split state can be used without checking it again.
+ *
+ * @param <S> split state of a wave
+ */
+public class PdfUrlCache<S extends Enum<S>> {
+
+    private final long expireMillis;
+    private final Map<String, WaveEntry<S>> waveEntries;
+
+    public PdfUrlCache(int maxWaves, long expireMillis) {
+        this.expireMillis = expireMillis;
+        this.waveEntries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, WaveEntry<S>> eldest) {
+                return size() > maxWaves;
+            }
+        };
+    }
+
+    /**
+     * Get the url resolved for the given split state, null if absent or resolved for another split state.
+     */
+    public synchronized String get(String waveNo, LabelTypeEnum labelType, S splitState) {
+        WaveEntry<S> entry = getEntry(waveNo);
+        if (entry == null || !Objects.equals(entry.splitState, splitState)) {
+            return null;
+        }
+        return entry.pdfUrls.get(labelType);
+    }
+
+    /**
+     * Get the url of a label type that does not depend on the split state.
+     */
+    public synchronized String get(String waveNo, LabelTypeEnum labelType) {
+        WaveEntry<S> entry = getEntry(waveNo);
+        return entry == null ? null : entry.pdfUrls.get(labelType);
+    }
+
+    public synchronized void put(String waveNo, LabelTypeEnum labelType, S splitState, String pdfUrl) {
+        WaveEntry<S> entry = getEntry(waveNo);
+        if (entry == null) {
+            entry = new WaveEntry<>(splitState);
+            waveEntries.put(waveNo, entry);
+        } else if (entry.splitState == null) {
+            entry.splitState = splitState;
+        } else if (splitState != null && entry.splitState != splitState) {
+            // 解析过程中拆箱状态已经变化，丢弃旧结果
+            return;
+        }
+        entry.pdfUrls.put(labelType, pdfUrl);
+    }
+
+    public synchronized S getSplitState(String waveNo) {
+        WaveEntry<S> entry = getEntry(waveNo);
+        return entry == null ? null : entry.splitState;
+    }
+
+    /**
+     * @return true if the split state of the wave was reported within the given time
+     */
+    public synchronized boolean isSplitStateReportedWithin(String waveNo, long maxAgeMillis) {
+        WaveEntry<S> entry = getEntry(waveNo);
+        return entry != null && entry.splitState != null
+                && System.currentTimeMillis() - entry.splitStateReportedTime <= maxAgeMillis;
+    }
+
+    /**
+     * Record the current split state of the wave, dropping its urls if the state changed.
+     */
+    public synchronized void updateSplitState(String waveNo, S splitState) {
+        WaveEntry<S> entry = getEntry(waveNo);
+        if (entry == null) {
+            entry = new WaveEntry<>(splitState);
+            waveEntries.put(waveNo, entry);
+        } else if (entry.splitState != null && entry.splitState != splitState) {
+            entry.pdfUrls.clear();
+        }
+        entry.splitState = splitState;
+        entry.splitStateReportedTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Drop the url of a label type of the wave, e.g. when its label is being regenerated.
+     */
+    public synchronized void invalidate(String waveNo, LabelTypeEnum labelType) {
+        WaveEntry<S> entry = getEntry(waveNo);
+        if (entry != null) {
+            entry.pdfUrls.remove(labelType);
+        }
+    }
+
+    private WaveEntry<S> getEntry(String waveNo) {
+        WaveEntry<S> entry = waveEntries.get(waveNo);
+        if (entry != null && System.currentTimeMillis() - entry.createTime > expireMillis) {
+            waveEntries.remove(waveNo);
+            return null;
+        }
+        return entry;
+    }
+
+    private static class WaveEntry<S> {
+        private final long createTime = System.currentTimeMillis();
+        private final Map<LabelTypeEnum, String> pdfUrls = new EnumMap<>(LabelTypeEnum.class);
+        private S splitState;
+        private long splitStateReportedTime;
+
+        private WaveEntry(S splitState) {
+            this.splitState = splitState;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.swms.plugins.print.client;
+
+import com.swms.plugins.print.config.HttpClientConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Plugin wide HTTP client for the print server and the label service.
+ * <p>
+ * All requests share one pooled connection manager, so connections to each printer host and to the label service
+ * are kept alive and reused. Timeouts are applied per destination: one {@link RestTemplate} is kept for every
+ * distinct {@link HttpClientConfig}, on a client of the shared pool with the connect, connection request and response
+ * timeouts of that config. {@link #close()} closes the pooled connections and removes the pool gauges.
+ */
+@Slf4j
+public class LabelPrintHttpClient {
+
+    private static final int MAX_TOTAL_CONNECTIONS = 200;
+    private static final long IDLE_EVICT_SECONDS = 30;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    // 只负责清理连接池中空闲和过期的连接，请求使用各目的地自己的 client
+    private final CloseableHttpClient evictingHttpClient;
+    private final Map<HttpClientConfig, RestTemplate> restTemplates = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final List<Gauge> poolGauges = new ArrayList<>();
+
+    /**
+     * @param maxConnectionsPerRoute max pooled connections to one printer host or to the label service
+     */
+    public LabelPrintHttpClient(int maxConnectionsPerRoute, MeterRegistry meterRegistry) {
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(Math.max(MAX_TOTAL_CONNECTIONS, maxConnectionsPerRoute))
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .build();
+        this.meterRegistry = meterRegistry;
+        this.evictingHttpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictIdleConnections(TimeValue.ofSeconds(IDLE_EVICT_SECONDS))
+                .evictExpiredConnections()
+                .build();
+
+        registerPoolGauge(meterRegistry, "sentrix.print.http.pool.leased", m -> m.getTotalStats().getLeased());
+        registerPoolGauge(meterRegistry, "sentrix.print.http.pool.available", m -> m.getTotalStats().getAvailable());
+        registerPoolGauge(meterRegistry, "sentrix.print.http.pool.pending", m -> m.getTotalStats().getPending());
+        registerPoolGauge(meterRegistry, "sentrix.print.http.pool.max", m -> m.getTotalStats().getMax());
+    }
+
+    /**
+     * Get the rest template for a destination, sharing the pooled connections of this client.
+     */
+    public RestTemplate getRestTemplate(HttpClientConfig config) {
+        return restTemplates.computeIfAbsent(config, this::buildRestTemplate);
+    }
+
+    /**
+     * Close the pooled connections, e.g. when the plugin stops.
+     */
+    public void close() {
+        poolGauges.forEach(meterRegistry::remove);
+        restTemplates.clear();
+        try {
+            evictingHttpClient.close();
+        } catch (IOException e) {
+            log.warn("Close label print http client failed", e);
+        }
+        connectionManager.close(CloseMode.GRACEFUL);
+    }
+
+    private RestTemplate buildRestTemplate(HttpClientConfig config) {
+        RequestConfig.Builder requestConfig = RequestConfig.custom();
+        if (config.getConnectTimeout() != null) {
+            requestConfig.setConnectTimeout(Timeout.ofMilliseconds(config.getConnectTimeout()));
+            // 连接池取连接的等待时间和建连超时保持一致
+            requestConfig.setConnectionRequestTimeout(Timeout.ofMilliseconds(config.getConnectTimeout()));
+        }
+        if (config.getReadTimeout() != null) {
+            requestConfig.setResponseTimeout(Timeout.ofMilliseconds(config.getReadTimeout()));
+        }
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(requestConfig.build())
+                .build();
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    private void registerPoolGauge(MeterRegistry meterRegistry, String name, ToDoubleFunction<PoolingHttpClientConnectionManager> value) {
+        poolGauges.add(Gauge.builder(name, connectionManager, value).register(meterRegistry));
+    }
+}
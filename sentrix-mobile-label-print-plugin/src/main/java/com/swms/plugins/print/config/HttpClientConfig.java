@@ -0,0 +1,17 @@
+package com.swms.plugins.print.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HttpClientConfig {
+
+    // Connection timeout in milliseconds
+    private Integer connectTimeout;
+
+    // Read timeout in milliseconds
+    private Integer readTimeout;
+}
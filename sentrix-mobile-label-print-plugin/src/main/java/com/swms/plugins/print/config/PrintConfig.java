@@ -2,6 +2,8 @@ package com.swms.plugins.print.config;
 
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class PrintConfig {
 
@@ -10,4 +12,7 @@ public class PrintConfig {
     private String host;
 
     private Integer port;
+
+    // 打印机熔断时按顺序切换到的备用打印机
+    private List<PrintConfig> backupPrinters;
 }
@@ -0,0 +1,75 @@
+package com.swms.plugins.print.config;
+
+import com.swms.wms.api.printer.constants.LabelTypeEnum;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable, pre-parsed view of a {@link PrintPluginConfig}.
+ * <p>
+ * Station printers are looked up by primitive station id and label type, print endpoints are built once and the
+ * label service url templates are split once.
+ */
+@Slf4j
+@Getter
+public class PrintConfigSnapshot {
+
+    private static final String CUSTOMER_WAVE_NO = "$customerWaveNo";
+    private static final String CUSTOMER_ORDER_NO = "$customerOrderNo";
+
+    private final PrintPluginConfig pluginConfig;
+
+    // 按工作站 id 排序，二分查找
+    private final long[] stationIds;
+    private final Map<LabelTypeEnum, PrinterEndpoint>[] stationPrinters;
+
+    private final UrlTemplate firstLabelUrl;
+    private final UrlTemplate splitUrl;
+    private final UrlTemplate addToLabelUrl;
+    private final UrlTemplate addToSplitUrl;
+
+    @SuppressWarnings("unchecked")
+    public PrintConfigSnapshot(PrintPluginConfig pluginConfig) {
+        this.pluginConfig = pluginConfig;
+
+        TreeMap<Long, Map<LabelTypeEnum, PrinterEndpoint>> printers = new TreeMap<>();
+        if (pluginConfig.getStationPrintConfig() != null) {
+            pluginConfig.getStationPrintConfig().forEach((stationId, labelTypePrintConfigMap) -> {
+                if (labelTypePrintConfigMap == null || labelTypePrintConfigMap.isEmpty()) {
+                    return;
+                }
+                try {
+                    Map<LabelTypeEnum, PrinterEndpoint> labelTypePrinters = new EnumMap<>(LabelTypeEnum.class);
+                    labelTypePrintConfigMap.forEach((labelType, printConfig) -> labelTypePrinters.put(labelType, new PrinterEndpoint(printConfig)));
+                    printers.put(Long.parseLong(stationId), labelTypePrinters);
+                } catch (NumberFormatException e) {
+                    log.warn("Ignore print config of invalid work station id: {}", stationId);
+                }
+            });
+        }
+        this.stationIds = printers.keySet().stream().mapToLong(Long::longValue).toArray();
+        this.stationPrinters = printers.values().toArray(new Map[0]);
+
+        this.firstLabelUrl = UrlTemplate.compile(pluginConfig.getFirstLabelUrl(), CUSTOMER_WAVE_NO);
+        this.splitUrl = UrlTemplate.compile(pluginConfig.getSplitUrl(), CUSTOMER_WAVE_NO);
+        this.addToLabelUrl = UrlTemplate.compile(pluginConfig.getAddToLabelUrl(), CUSTOMER_ORDER_NO);
+        this.addToSplitUrl = UrlTemplate.compile(pluginConfig.getAddToSplitUrl(), CUSTOMER_ORDER_NO);
+    }
+
+    public boolean hasStation(long workStationId) {
+        return Arrays.binarySearch(stationIds, workStationId) >= 0;
+    }
+
+    /**
+     * @return null if the station has no printer for the label type
+     */
+    public PrinterEndpoint getPrinter(long workStationId, LabelTypeEnum labelType) {
+        int index = Arrays.binarySearch(stationIds, workStationId);
+        return index < 0 ? null : stationPrinters[index].get(labelType);
+    }
+}
@@ -15,4 +15,32 @@ public class PrintPluginConfig {
     private String addToSplitUrl;
 
     private Map<String, Map<LabelTypeEnum, PrintConfig>> stationPrintConfig;
+
+    private HttpClientConfig printServerClientConfig = new HttpClientConfig(1000, 5000);
+    private HttpClientConfig labelServiceClientConfig = new HttpClientConfig(2000, 10000);
+
+    // 打印失败的重试次数（含第一次）和首次重试间隔，之后每次翻倍
+    private int printMaxAttempts = 3;
+    private long printRetryBackoffMillis = 1000;
+
+    // 重试后仍打印失败的文档记录到该文件，相对路径基于应用的工作目录
+    private String deadLetterFile = "sentrix-mobile-label-print/dead-letter.log";
+
+    // 同一事件发往同一台打印机的文档合并为一个打印请求，每个请求最多的文档数，1 表示不合并
+    private int printBatchMaxSize = 1;
+
+    // 波次绑定播种墙槽口后，后台预取 label 和 A4 的 url
+    private boolean prefetchEnabled = false;
+
+    // 打印前把 pdf 下载到本地磁盘缓存，以 base64 内容发给打印服务，而不是让打印服务每次下载
+    private boolean pdfSpoolEnabled = false;
+
+    // 本地 pdf 缓存目录，相对路径基于应用的工作目录，为空时不缓存
+    private String pdfSpoolDir = "sentrix-mobile-label-print/spool";
+
+    // 去重窗口：窗口内重复的事件和同一工作站同一波次同一类型的面单不再打印，重打不受影响，0 表示不去重
+    private long printDedupWindowMillis = 0;
+
+    // 本地维护槽口到波次的索引，扫描库位时不再查询播种墙和拣选单，后台定期全量刷新
+    private boolean slotIndexEnabled = false;
 }
@@ -0,0 +1,36 @@
+package com.swms.plugins.print.config;
+
+import lombok.Getter;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * A printer with its print endpoint built once, and its backup printers in failover order.
+ */
+@Getter
+public class PrinterEndpoint {
+
+    private final PrintConfig printConfig;
+    private final String printerKey;
+    private final URI printUri;
+    private final List<PrinterEndpoint> backups;
+
+    public PrinterEndpoint(PrintConfig printConfig) {
+        this(printConfig, true);
+    }
+
+    private PrinterEndpoint(PrintConfig printConfig, boolean withBackups) {
+        this.printConfig = printConfig;
+        this.printerKey = printConfig.getHost() + ":" + printConfig.getPort() + "/" + printConfig.getPrintName();
+        this.printUri = URI.create("http://" + printConfig.getHost() + ":" + printConfig.getPort() + "/print");
+        // 备用打印机不再有自己的备用打印机
+        this.backups = withBackups && printConfig.getBackupPrinters() != null
+                ? printConfig.getBackupPrinters().stream().map(v -> new PrinterEndpoint(v, false)).toList()
+                : List.of();
+    }
+
+    public String getPrintName() {
+        return printConfig.getPrintName();
+    }
+}
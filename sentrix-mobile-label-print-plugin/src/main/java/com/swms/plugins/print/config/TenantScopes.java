@@ -0,0 +1,158 @@
+package com.swms.plugins.print.config;
+
+import com.swms.common.utils.utils.JsonUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Per tenant state of the plugin, e.g. caches and background pollers, kept apart per tenant.
+ * <p>
+ * The state of a tenant is built from a snapshot of its print config on first use. The config of a tenant is read
+ * again at most every {@code configCheckMillis}, by one event of the tenant; when its version, its serialized content,
+ * changed, a new snapshot is built and swapped into the state, which keeps its caches. Scopes not used for
+ * {@code idleMillis} are closed, and at most {@code maxScopes} are kept, least recently used first out.
+ *
+ * @param <T> per tenant state
+ */
+@Slf4j
+public class TenantScopes<T> {
+
+    private final long idleMillis;
+    private final long configCheckMillis;
+    private final Function<PrintConfigSnapshot, T> factory;
+    private final BiConsumer<T, PrintConfigSnapshot> snapshotUpdater;
+    private final Consumer<T> closer;
+
+    // tenant key >>> scope, guarded by this, least recently used first
+    private final LinkedHashMap<Object, Scope<T>> scopes = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxScopes;
+
+    /**
+     * @param factory         build the state of a tenant from its config snapshot
+     * @param snapshotUpdater swap the snapshot of a changed config into the state of a tenant
+     * @param closer          release the state of a tenant, e.g. cancel its pollers
+     */
+    public TenantScopes(int maxScopes, long idleMillis, long configCheckMillis, Function<PrintConfigSnapshot, T> factory,
+                        BiConsumer<T, PrintConfigSnapshot> snapshotUpdater, Consumer<T> closer) {
+        this.maxScopes = maxScopes;
+        this.idleMillis = idleMillis;
+        this.configCheckMillis = configCheckMillis;
+        this.factory = factory;
+        this.snapshotUpdater = snapshotUpdater;
+        this.closer = closer;
+    }
+
+    /**
+     * Get the state of the tenant, building it on first use.
+     *
+     * @param configLoader read the print config of the tenant, only called on first use and when the config is due
+     *                     to be checked
+     */
+    public T get(Object tenantKey, Supplier<PrintPluginConfig> configLoader) {
+        long now = System.currentTimeMillis();
+        Scope<T> scope;
+        boolean checkConfig = false;
+        synchronized (this) {
+            scope = scopes.get(tenantKey);
+            if (scope != null) {
+                scope.lastUsedTime = now;
+                // 同一租户同时只有一个事件重新读取配置
+                if (now - scope.configCheckedTime >= configCheckMillis) {
+                    scope.configCheckedTime = now;
+                    checkConfig = true;
+                }
+            }
+        }
+
+        if (scope == null) {
+            return create(tenantKey, configLoader.get(), now);
+        }
+        if (checkConfig) {
+            checkConfig(scope, configLoader.get());
+        }
+        return scope.state;
+    }
+
+    /**
+     * Close all the scopes, e.g. when the plugin stops.
+     */
+    public synchronized void closeAll() {
+        scopes.values().forEach(this::close);
+        scopes.clear();
+    }
+
+    private T create(Object tenantKey, PrintPluginConfig config, long now) {
+        Scope<T> created = new Scope<>(factory.apply(new PrintConfigSnapshot(config)), version(config), now);
+        Scope<T> scope;
+        synchronized (this) {
+            scope = scopes.putIfAbsent(tenantKey, created);
+            if (scope == null) {
+                log.info("New print plugin tenant, build its tenant scope, scopes: {}", scopes.size());
+                evict(now);
+                return created.state;
+            }
+        }
+        // 另一个事件已经建好了
+        close(created);
+        return scope.state;
+    }
+
+    private void checkConfig(Scope<T> scope, PrintPluginConfig config) {
+        String version = version(config);
+        synchronized (scope) {
+            if (version.equals(scope.configVersion)) {
+                return;
+            }
+            snapshotUpdater.accept(scope.state, new PrintConfigSnapshot(config));
+            scope.configVersion = version;
+        }
+        log.info("Print plugin config changed, swap its config snapshot");
+    }
+
+    private static String version(PrintPluginConfig config) {
+        return Objects.toString(JsonUtils.obj2String(config));
+    }
+
+    private void evict(long now) {
+        Iterator<Scope<T>> iterator = scopes.values().iterator();
+        while (iterator.hasNext()) {
+            Scope<T> eldest = iterator.next();
+            if (scopes.size() <= maxScopes && now - eldest.lastUsedTime <= idleMillis) {
+                return;
+            }
+            iterator.remove();
+            close(eldest);
+        }
+    }
+
+    private void close(Scope<T> scope) {
+        try {
+            closer.accept(scope.state);
+        } catch (Exception e) {
+            log.warn("Close print plugin tenant scope failed", e);
+        }
+    }
+
+    private static class Scope<T> {
+        private final T state;
+        // guarded by this scope
+        private String configVersion;
+        // guarded by the scopes
+        private long lastUsedTime;
+        private long configCheckedTime;
+
+        private Scope(T state, String configVersion, long now) {
+            this.state = state;
+            this.configVersion = configVersion;
+            this.lastUsedTime = now;
+            this.configCheckedTime = now;
+        }
+    }
+}
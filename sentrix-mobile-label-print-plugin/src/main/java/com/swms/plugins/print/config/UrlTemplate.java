@@ -0,0 +1,52 @@
+package com.swms.plugins.print.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A url template with one variable, split once into the fixed parts around the variable.
+ */
+public class UrlTemplate {
+
+    private final String[] fixedParts;
+    private final int fixedLength;
+
+    private UrlTemplate(String[] fixedParts) {
+        this.fixedParts = fixedParts;
+        int length = 0;
+        for (String part : fixedParts) {
+            length += part.length();
+        }
+        this.fixedLength = length;
+    }
+
+    /**
+     * @return null if the template is null
+     */
+    public static UrlTemplate compile(String template, String variable) {
+        if (template == null) {
+            return null;
+        }
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        int index;
+        while ((index = template.indexOf(variable, start)) >= 0) {
+            parts.add(template.substring(start, index));
+            start = index + variable.length();
+        }
+        parts.add(template.substring(start));
+        return new UrlTemplate(parts.toArray(String[]::new));
+    }
+
+    public String expand(String value) {
+        if (fixedParts.length == 1) {
+            return fixedParts[0];
+        }
+        StringBuilder builder = new StringBuilder(fixedLength + value.length() * (fixedParts.length - 1));
+        builder.append(fixedParts[0]);
+        for (int i = 1; i < fixedParts.length; i++) {
+            builder.append(value).append(fixedParts[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,174 @@
+package com.swms.plugins.print.dedup;
+
+/**
+ * Bounded in-memory window of recently seen print keys, to drop duplicate print events and duplicate labels.
+ * <p>
+ * Keys are 64-bit hashes kept in lock-striped open addressing tables of primitive arrays, so a lookup allocates
+ * nothing. An entry is live until its ttl passes; expired slots are reused, and when all probed slots are live the one
+ * expiring first is overwritten, so the window stays bounded under any event rate.
+ * <p>
+ * A print claims its key with {@link #tryClaim(long, long)}, which fails if the key is already in the window, claimed
+ * by a print in flight or recorded. The claim is released when the print fails before it is queued, and recorded once
+ * it is queued, so of two copies of an event arriving together exactly one prints.
+ */
+public class PrintDedupWindow {
+
+    private static final int STRIPES = 16;
+    private static final int MAX_PROBES = 8;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * @param capacity number of keys kept, rounded up to a power of two per stripe
+     */
+    public PrintDedupWindow(int capacity) {
+        int stripeCapacity = Integer.highestOneBit(Math.max(MAX_PROBES, capacity / STRIPES - 1) << 1);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * @return true if the key was recorded within its ttl, i.e. a duplicate
+     */
+    public boolean contains(long keyHash) {
+        return contains(keyHash, System.currentTimeMillis());
+    }
+
+    /**
+     * Add the key for the ttl unless it is already in the window.
+     *
+     * @return false if the key is in the window, i.e. a duplicate
+     */
+    public boolean tryClaim(long keyHash, long ttlMillis) {
+        return tryClaim(keyHash, System.currentTimeMillis(), ttlMillis);
+    }
+
+    /**
+     * Remove a claimed key whose print was not queued, so the key can be printed again.
+     */
+    public void release(long keyHash) {
+        stripe(keyHash).release(keyHash);
+    }
+
+    /**
+     * Record the key for the ttl, extending it if the key is already in the window, e.g. to confirm a claim once its
+     * print is queued.
+     */
+    public void record(long keyHash, long ttlMillis) {
+        record(keyHash, System.currentTimeMillis(), ttlMillis);
+    }
+
+    boolean contains(long keyHash, long now) {
+        return stripe(keyHash).contains(keyHash, now);
+    }
+
+    boolean tryClaim(long keyHash, long now, long ttlMillis) {
+        return stripe(keyHash).put(keyHash, now, now + ttlMillis, false);
+    }
+
+    void record(long keyHash, long now, long ttlMillis) {
+        stripe(keyHash).put(keyHash, now, now + ttlMillis, true);
+    }
+
+    private Stripe stripe(long keyHash) {
+        return stripes[(int) (keyHash >>> 60) & (STRIPES - 1)];
+    }
+
+    public static long hash(String value) {
+        return mix(FNV_OFFSET_BASIS, value);
+    }
+
+    public static long hash(long workStationId, String waveNo, Enum<?> labelType) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ workStationId) * FNV_PRIME;
+        hash = mix(hash, waveNo);
+        hash = (hash ^ (labelType == null ? -1 : labelType.ordinal())) * FNV_PRIME;
+        return finalizeHash(hash);
+    }
+
+    private static long mix(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return finalizeHash(hash);
+    }
+
+    // 打散高位，条带由高 4 位选出
+    private static long finalizeHash(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static class Stripe {
+        private final long[] keys;
+        // 0 表示空槽
+        private final long[] expireTimes;
+        private final int mask;
+
+        private Stripe(int capacity) {
+            this.keys = new long[capacity];
+            this.expireTimes = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private synchronized boolean contains(long key, long now) {
+            int start = (int) key & mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                int slot = (start + probe) & mask;
+                if (expireTimes[slot] > now && keys[slot] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param extend extend a live key, otherwise leave it as it is
+         * @return false if the key was live
+         */
+        private synchronized boolean put(long key, long now, long expireTime, boolean extend) {
+            int start = (int) key & mask;
+            int freeSlot = -1;
+            int oldestSlot = start;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                int slot = (start + probe) & mask;
+                boolean live = expireTimes[slot] > now;
+                if (live && keys[slot] == key) {
+                    if (extend) {
+                        expireTimes[slot] = Math.max(expireTimes[slot], expireTime);
+                    }
+                    return false;
+                }
+                if (!live && freeSlot < 0) {
+                    freeSlot = slot;
+                }
+                if (expireTimes[slot] < expireTimes[oldestSlot]) {
+                    oldestSlot = slot;
+                }
+            }
+
+            int slot = freeSlot >= 0 ? freeSlot : oldestSlot;
+            keys[slot] = key;
+            expireTimes[slot] = expireTime;
+            return true;
+        }
+
+        private synchronized void release(long key) {
+            int start = (int) key & mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                int slot = (start + probe) & mask;
+                if (keys[slot] == key) {
+                    expireTimes[slot] = 0;
+                }
+            }
+        }
+    }
+}
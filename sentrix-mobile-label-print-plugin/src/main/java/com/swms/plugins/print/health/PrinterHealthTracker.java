@@ -0,0 +1,206 @@
+package com.swms.plugins.print.health;
+
+import com.swms.plugins.print.config.PrinterEndpoint;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Health of each printer, a circuit breaker over a rolling window of the latest print requests.
+ * <p>
+ * The circuit opens when at least {@code minCalls} of the window are recorded and the failure rate reaches
+ * {@code failureRateThreshold}. After {@code openMillis} one probe request is let through (half open): success
+ * closes the circuit, failure opens it again. Printers with an open circuit are skipped in favour of their backup
+ * printers; no request is sent to a printer with an open circuit, its jobs wait for the probe when no backup is
+ * available.
+ */
+@Slf4j
+public class PrinterHealthTracker {
+
+    // 半开状态下探测请求未返回时，再次检查的间隔
+    private static final long PROBE_WAIT_MILLIS = 1000;
+
+    private final int windowSize;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final long openMillis;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, PrinterHealth> printerHealths = new ConcurrentHashMap<>();
+
+    public PrinterHealthTracker(int windowSize, int minCalls, double failureRateThreshold, long openMillis,
+                                MeterRegistry meterRegistry) {
+        this.windowSize = windowSize;
+        this.minCalls = minCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * The first available printer of the primary printer and its backups, the primary printer if none is available,
+     * see {@link #millisUntilAvailable(String)}.
+     */
+    public PrinterEndpoint route(PrinterEndpoint primary) {
+        if (isAvailable(primary.getPrinterKey())) {
+            return primary;
+        }
+        for (PrinterEndpoint backup : primary.getBackups()) {
+            if (isAvailable(backup.getPrinterKey())) {
+                return backup;
+            }
+        }
+        return primary;
+    }
+
+    public boolean isAvailable(String printerKey) {
+        PrinterHealth health = printerHealths.get(printerKey);
+        return health == null || health.isAvailable(System.currentTimeMillis());
+    }
+
+    /**
+     * @return 0 if a request may be sent to the printer, otherwise how long until its circuit lets the probe through
+     */
+    public long millisUntilAvailable(String printerKey) {
+        PrinterHealth health = printerHealths.get(printerKey);
+        return health == null ? 0 : health.millisUntilAvailable(System.currentTimeMillis());
+    }
+
+    /**
+     * Called before a print request is sent: the open circuit goes half open once the open period is over and lets
+     * this request through as the probe.
+     *
+     * @return false if the request must not be sent
+     */
+    public boolean tryAcquire(String printerKey) {
+        return getHealth(printerKey).tryAcquire(System.currentTimeMillis());
+    }
+
+    public void recordSuccess(String printerKey, long latencyMillis) {
+        getHealth(printerKey).record(false, latencyMillis, System.currentTimeMillis());
+    }
+
+    public void recordFailure(String printerKey, long latencyMillis) {
+        getHealth(printerKey).record(true, latencyMillis, System.currentTimeMillis());
+    }
+
+    private PrinterHealth getHealth(String printerKey) {
+        return printerHealths.computeIfAbsent(printerKey, this::createHealth);
+    }
+
+    private PrinterHealth createHealth(String printerKey) {
+        PrinterHealth health = new PrinterHealth(printerKey);
+        Gauge.builder("sentrix.print.printer.circuit.open", health, v -> v.state == CircuitState.CLOSED ? 0 : 1)
+                .tag("printer", printerKey).register(meterRegistry);
+        Gauge.builder("sentrix.print.printer.failure.rate", health, PrinterHealth::failureRate)
+                .tag("printer", printerKey).register(meterRegistry);
+        Gauge.builder("sentrix.print.printer.latency.mean", health, PrinterHealth::meanLatencyMillis)
+                .tag("printer", printerKey).register(meterRegistry);
+        return health;
+    }
+
+    private enum CircuitState {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private class PrinterHealth {
+        private final String printerKey;
+
+        // 环形窗口，记录最近的请求结果和耗时
+        private final boolean[] failures = new boolean[windowSize];
+        private final long[] latencies = new long[windowSize];
+        private int next;
+        private int count;
+        private int failureCount;
+        private long latencySum;
+
+        private CircuitState state = CircuitState.CLOSED;
+        private long openedTime;
+
+        private PrinterHealth(String printerKey) {
+            this.printerKey = printerKey;
+        }
+
+        private synchronized boolean isAvailable(long now) {
+            return switch (state) {
+                case CLOSED -> true;
+                case OPEN -> now - openedTime >= openMillis;
+                // 半开状态只放过一个探测请求
+                case HALF_OPEN -> false;
+            };
+        }
+
+        private synchronized long millisUntilAvailable(long now) {
+            return switch (state) {
+                case CLOSED -> 0;
+                case OPEN -> Math.max(0, openedTime + openMillis - now);
+                case HALF_OPEN -> PROBE_WAIT_MILLIS;
+            };
+        }
+
+        private synchronized boolean tryAcquire(long now) {
+            if (state == CircuitState.CLOSED) {
+                return true;
+            }
+            if (state == CircuitState.OPEN && now - openedTime >= openMillis) {
+                state = CircuitState.HALF_OPEN;
+                log.info("Printer circuit half open, probe printer: {}", printerKey);
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void record(boolean failure, long latencyMillis, long now) {
+            if (count == windowSize) {
+                failureCount -= failures[next] ? 1 : 0;
+                latencySum -= latencies[next];
+            } else {
+                count++;
+            }
+            failures[next] = failure;
+            latencies[next] = latencyMillis;
+            failureCount += failure ? 1 : 0;
+            latencySum += latencyMillis;
+            next = (next + 1) % windowSize;
+
+            if (state == CircuitState.HALF_OPEN) {
+                if (failure) {
+                    open(now);
+                } else {
+                    close();
+                }
+            } else if (state == CircuitState.CLOSED && count >= minCalls && failureRate() >= failureRateThreshold) {
+                open(now);
+            }
+        }
+
+        private void open(long now) {
+            state = CircuitState.OPEN;
+            openedTime = now;
+            log.warn("Printer circuit open, printer: {}, failure rate: {}, mean latency: {} ms",
+                    printerKey, failureRate(), meanLatencyMillis());
+        }
+
+        private void close() {
+            state = CircuitState.CLOSED;
+            next = 0;
+            count = 0;
+            failureCount = 0;
+            latencySum = 0;
+            log.info("Printer circuit closed, printer: {}", printerKey);
+        }
+
+        private synchronized double failureRate() {
+            return count == 0 ? 0 : (double) failureCount / count;
+        }
+
+        private synchronized double meanLatencyMillis() {
+            return count == 0 ? 0 : (double) latencySum / count;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.swms.plugins.print.index;
+
+import com.swms.plugins.common.ThreadContextSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Per station index from put wall slot code to the bound, unfinished picking order and its wave no.
+ * <p>
+ * The whole index is reloaded every refresh interval; in between, bindings resolved remotely on an index miss or from
+ * a dispatch event are added. A binding older than the max age, two refresh intervals plus the time the last reload
+ * took, counts as a miss and is checked live: reloads run with a fixed delay, so a binding is replaced after one
+ * interval plus the time of two reloads, and a failing reload never serves a stale binding for longer than the max age.
+ * Reloads run with the thread context of the latest print event, see {@link #useContext(ThreadContextSnapshot)}, and
+ * are skipped until there is one.
+ */
+@Slf4j
+public class PutWallSlotIndex {
+
+    // 绑定的最长使用时间为刷新间隔的倍数，再加上一次刷新的耗时
+    private static final int MAX_AGE_REFRESH_INTERVALS = 2;
+
+    private final long refreshIntervalMillis;
+    private final boolean enabled;
+    private final Supplier<Collection<SlotBinding>> loader;
+
+    // work station id >>> slot code >>> binding
+    private final Map<Long, ConcurrentMap<String, SlotBinding>> stationSlots = new ConcurrentHashMap<>();
+
+    private volatile ThreadContextSnapshot context;
+    private volatile long lastRefreshMillis;
+
+    private final ScheduledFuture<?> refreshTask;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    /**
+     * @param scheduler runs the reloads
+     * @param enabled   false to keep the index empty, every lookup is a miss
+     * @param loader    all current bindings of the stations with print config
+     */
+    public PutWallSlotIndex(long refreshIntervalMillis, ScheduledExecutorService scheduler, boolean enabled,
+                            Supplier<Collection<SlotBinding>> loader, MeterRegistry meterRegistry) {
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.enabled = enabled;
+        this.loader = loader;
+        this.hitCounter = Counter.builder("sentrix.print.slot.index.hit").register(meterRegistry);
+        this.missCounter = Counter.builder("sentrix.print.slot.index.miss").register(meterRegistry);
+        this.refreshTask = enabled
+                ? scheduler.scheduleWithFixedDelay(this::refreshSafely, 0, refreshIntervalMillis, TimeUnit.MILLISECONDS)
+                : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * How long a binding is used after it was loaded, 0 when the index is disabled.
+     */
+    public long getMaxAgeMillis() {
+        return enabled ? MAX_AGE_REFRESH_INTERVALS * refreshIntervalMillis + lastRefreshMillis : 0;
+    }
+
+    /**
+     * Remember the thread context of a print event, the following reloads run with it.
+     */
+    public void useContext(ThreadContextSnapshot context) {
+        this.context = context;
+    }
+
+    /**
+     * Stop reloading the index.
+     */
+    public void shutdown() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+        }
+        stationSlots.clear();
+    }
+
+    /**
+     * @return null on a miss
+     */
+    public String findWaveNo(long workStationId, String slotCode) {
+        if (!enabled) {
+            return null;
+        }
+        Map<String, SlotBinding> slots = stationSlots.get(workStationId);
+        SlotBinding binding = slots == null ? null : slots.get(slotCode);
+        if (binding == null || System.currentTimeMillis() - binding.loadedTime() > getMaxAgeMillis()) {
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        return binding.waveNo();
+    }
+
+    public void bind(long workStationId, String slotCode, long pickingOrderId, String waveNo) {
+        if (!enabled) {
+            return;
+        }
+        stationSlots.computeIfAbsent(workStationId, k -> new ConcurrentHashMap<>())
+                .put(slotCode, new SlotBinding(workStationId, slotCode, pickingOrderId, waveNo, System.currentTimeMillis()));
+    }
+
+    public void unbind(long workStationId, String slotCode) {
+        Map<String, SlotBinding> slots = stationSlots.get(workStationId);
+        if (slots != null) {
+            slots.remove(slotCode);
+        }
+    }
+
+    /**
+     * Picking orders of all the fresh bindings.
+     */
+    public Set<Long> getPickingOrderIds() {
+        long now = System.currentTimeMillis();
+        long maxAgeMillis = getMaxAgeMillis();
+        return stationSlots.values().stream()
+                .flatMap(v -> v.values().stream())
+                .filter(v -> now - v.loadedTime() <= maxAgeMillis)
+                .map(SlotBinding::pickingOrderId)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * @return wave no by picking order id of the given picking orders
+     */
+    public Map<Long, String> getWaveNos(Set<Long> pickingOrderIds) {
+        return stationSlots.values().stream()
+                .flatMap(v -> v.values().stream())
+                .filter(v -> pickingOrderIds.contains(v.pickingOrderId()) && v.waveNo() != null)
+                .collect(Collectors.toMap(SlotBinding::pickingOrderId, SlotBinding::waveNo, (a, b) -> b));
+    }
+
+    private void refreshSafely() {
+        ThreadContextSnapshot current = context;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.run(this::refresh);
+        } catch (Exception e) {
+            log.warn("Refresh put wall slot index failed", e);
+        }
+    }
+
+    private void refresh() {
+        long startTime = System.currentTimeMillis();
+        Map<Long, ConcurrentMap<String, SlotBinding>> loaded = loader.get().stream()
+                .collect(Collectors.groupingBy(SlotBinding::workStationId, ConcurrentHashMap::new,
+                        Collectors.toConcurrentMap(SlotBinding::slotCode, v -> v, (a, b) -> b)));
+        stationSlots.keySet().retainAll(loaded.keySet());
+        stationSlots.putAll(loaded);
+        lastRefreshMillis = System.currentTimeMillis() - startTime;
+        log.debug("Refreshed put wall slot index, stations: {}", loaded.size());
+    }
+
+    public record SlotBinding(long workStationId, String slotCode, long pickingOrderId, String waveNo, long loadedTime) {
+    }
+}
@@ -0,0 +1,91 @@
+package com.swms.plugins.print.metrics;
+
+import com.swms.wms.api.printer.constants.LabelTypeEnum;
+import com.swms.wms.api.printer.constants.PrintNodeEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency of each print stage, print outcomes and the latency from receiving a print event to the print server
+ * accepting its documents.
+ * <p>
+ * Meters are registered once per tag set and kept, recording does not build or look up meters in the registry.
+ */
+public class PrintMetrics {
+
+    public static final String STAGE_SLOT_TO_WAVE = "slot_to_wave";
+    public static final String STAGE_WAVE_QUERY = "wave_query";
+    public static final String STAGE_LABEL_PDF_URL = "label_pdf_url";
+    public static final String STAGE_A4_PAPER_URL = "a4_paper_url";
+    public static final String STAGE_PRINT_REQUEST = "print_request";
+
+    public static final String OUTCOME_PRINTED = "printed";
+    public static final String OUTCOME_SKIPPED_NO_CONFIG = "skipped_no_config";
+    public static final String OUTCOME_SKIPPED_REPLENISH = "skipped_replenish";
+    public static final String OUTCOME_SKIPPED_NO_PDF = "skipped_no_pdf";
+    public static final String OUTCOME_SKIPPED_DUPLICATE = "skipped_duplicate";
+    public static final String OUTCOME_FAILED = "failed";
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<LabelTags, Counter> outcomeCounters = new ConcurrentHashMap<>();
+    private final Map<LabelTags, Timer> eventLatencyTimers = new ConcurrentHashMap<>();
+
+    public PrintMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T recordStage(String stage, Supplier<T> supplier) {
+        return stageTimer(stage).record(supplier);
+    }
+
+    public void recordStage(String stage, long durationNanos) {
+        stageTimer(stage).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void countOutcome(String outcome, Long workStationId, LabelTypeEnum labelType, PrintNodeEnum printNode) {
+        outcomeCounters.computeIfAbsent(new LabelTags(outcome, workStationId, labelType, printNode),
+                tags -> Counter.builder("sentrix.print.label")
+                        .tag("outcome", tags.outcome())
+                        .tags(tags.commonTags())
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    /**
+     * Record the latency from receiving the print event to the print server accepting a document of it.
+     */
+    public void recordEventLatency(long eventStartNanos, Long workStationId, LabelTypeEnum labelType, PrintNodeEnum printNode) {
+        eventLatencyTimers.computeIfAbsent(new LabelTags(null, workStationId, labelType, printNode),
+                tags -> Timer.builder("sentrix.print.event.latency")
+                        .tags(tags.commonTags())
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.nanoTime() - eventStartNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer stageTimer(String stage) {
+        return stageTimers.computeIfAbsent(stage, k -> Timer.builder("sentrix.print.stage.duration")
+                .tag("stage", k)
+                .register(meterRegistry));
+    }
+
+    private record LabelTags(String outcome, Long workStationId, LabelTypeEnum labelType, PrintNodeEnum printNode) {
+
+        private Tags commonTags() {
+            return Tags.of("station", workStationId == null ? NONE : String.valueOf(workStationId),
+                    "label.type", labelType == null ? NONE : labelType.name(),
+                    "print.node", printNode == null ? NONE : printNode.name());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.swms.plugins.print.prefetch;
+
+import com.swms.plugins.common.ThreadContextSnapshot;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Warms the label urls of a wave in the background as soon as its picking order is bound to a put wall slot, so the
+ * print at location scan finds them in the cache.
+ * <p>
+ * Slot bindings are polled; every picking order is prefetched once, it is only marked as prefetched when the prefetch
+ * of its wave succeeded, so a failed prefetch is retried on the next poll. Polls and prefetches run with the thread
+ * context of the latest print event, see {@link #useContext(ThreadContextSnapshot)}, and are skipped until there is
+ * one.
+ */
+@Slf4j
+public class LabelPrefetcher {
+
+    private static final int MAX_PREFETCHED_PICKING_ORDERS = 20000;
+
+    private final BooleanSupplier enabled;
+    private final Supplier<Collection<Long>> boundPickingOrderIds;
+    private final Function<Set<Long>, Map<Long, String>> waveNoResolver;
+    private final Predicate<String> waveWarmer;
+
+    private final Set<Long> prefetchedPickingOrderIds = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_PREFETCHED_PICKING_ORDERS;
+        }
+    });
+    // 正在预取的拣选单，guarded by prefetchedPickingOrderIds
+    private final Set<Long> prefetchingPickingOrderIds = new HashSet<>();
+
+    private volatile ThreadContextSnapshot context;
+
+    private final Executor prefetchWorkers;
+    private final ScheduledFuture<?> pollTask;
+
+    /**
+     * @param scheduler            runs the polls
+     * @param prefetchWorkers      runs the prefetches of the waves
+     * @param boundPickingOrderIds picking orders currently bound to put wall slots
+     * @param waveNoResolver       wave no by picking order id of the unfinished picking orders
+     * @param waveWarmer           resolve and cache the label urls of a wave, false if it failed and should be retried
+     */
+    public LabelPrefetcher(long intervalMillis, ScheduledExecutorService scheduler, Executor prefetchWorkers,
+                           BooleanSupplier enabled,
+                           Supplier<Collection<Long>> boundPickingOrderIds,
+                           Function<Set<Long>, Map<Long, String>> waveNoResolver,
+                           Predicate<String> waveWarmer) {
+        this.enabled = enabled;
+        this.boundPickingOrderIds = boundPickingOrderIds;
+        this.waveNoResolver = waveNoResolver;
+        this.waveWarmer = waveWarmer;
+        this.prefetchWorkers = prefetchWorkers;
+        this.pollTask = scheduler.scheduleWithFixedDelay(this::pollSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop polling, prefetches already started run to the end.
+     */
+    public void shutdown() {
+        pollTask.cancel(false);
+    }
+
+    /**
+     * Remember the thread context of a print event, the following polls and prefetches run with it.
+     */
+    public void useContext(ThreadContextSnapshot context) {
+        this.context = context;
+    }
+
+    private void pollSafely() {
+        ThreadContextSnapshot current = context;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.run(() -> poll(current));
+        } catch (Exception e) {
+            log.warn("Poll put wall slot bindings for label prefetch failed", e);
+        }
+    }
+
+    private void poll(ThreadContextSnapshot current) {
+        if (!enabled.getAsBoolean()) {
+            return;
+        }
+
+        Set<Long> newPickingOrderIds;
+        synchronized (prefetchedPickingOrderIds) {
+            newPickingOrderIds = boundPickingOrderIds.get().stream()
+                    .filter(v -> !prefetchedPickingOrderIds.contains(v))
+                    .filter(prefetchingPickingOrderIds::add).collect(Collectors.toSet());
+        }
+        if (newPickingOrderIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<Long>> wavePickingOrderIds;
+        try {
+            wavePickingOrderIds = waveNoResolver.apply(newPickingOrderIds).entrySet().stream()
+                    .collect(Collectors.groupingBy(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+        } catch (RuntimeException e) {
+            finish(newPickingOrderIds, false);
+            throw e;
+        }
+        // 已完成的拣选单不再预取
+        Set<Long> finishedPickingOrderIds = new HashSet<>(newPickingOrderIds);
+        wavePickingOrderIds.values().forEach(finishedPickingOrderIds::removeAll);
+        finish(finishedPickingOrderIds, true);
+
+        log.debug("Prefetch label urls for new bound picking orders: {}, wave nos: {}", newPickingOrderIds, wavePickingOrderIds.keySet());
+        wavePickingOrderIds.forEach((waveNo, pickingOrderIds) -> prefetchWorkers.execute(() -> current.run(() -> {
+            boolean prefetched = false;
+            try {
+                prefetched = waveWarmer.test(waveNo);
+            } catch (Exception e) {
+                log.warn("Prefetch label urls failed, wave no: {}", waveNo, e);
+            } finally {
+                finish(pickingOrderIds, prefetched);
+            }
+        })));
+    }
+
+    /**
+     * Mark the picking orders as prefetched, or release them to be retried on the next poll.
+     */
+    private void finish(Collection<Long> pickingOrderIds, boolean prefetched) {
+        synchronized (prefetchedPickingOrderIds) {
+            prefetchingPickingOrderIds.removeAll(pickingOrderIds);
+            if (prefetched) {
+                prefetchedPickingOrderIds.addAll(pickingOrderIds);
+            }
+        }
+    }
+}
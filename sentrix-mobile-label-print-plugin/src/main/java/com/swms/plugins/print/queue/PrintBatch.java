@@ -0,0 +1,100 @@
+package com.swms.plugins.print.queue;
+
+import com.swms.plugins.print.config.PrintConfigSnapshot;
+import com.swms.plugins.print.config.PrintPluginConfig;
+import com.swms.plugins.print.config.PrinterEndpoint;
+import com.swms.wms.api.printer.constants.PrintNodeEnum;
+import org.apache.commons.collections4.ListUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the documents of one print event and groups them per printer, at most
+ * {@link PrintPluginConfig#getPrintBatchMaxSize()} documents per print request, keeping their order.
+ */
+public class PrintBatch {
+
+    private final String eventId;
+    private final Long workStationId;
+    private final PrintNodeEnum printNode;
+    private final long eventStartNanos = System.nanoTime();
+    private final PrintConfigSnapshot configSnapshot;
+    private final Map<String, PrinterDocuments> printerDocuments = new LinkedHashMap<>();
+    private final List<Long> claimedDedupKeys = new ArrayList<>();
+    private final List<Long> dedupKeys = new ArrayList<>();
+
+    public PrintBatch(String eventId, Long workStationId, PrintNodeEnum printNode, PrintConfigSnapshot configSnapshot) {
+        this.eventId = eventId;
+        this.workStationId = workStationId;
+        this.printNode = printNode;
+        this.configSnapshot = configSnapshot;
+    }
+
+    /**
+     * The config snapshot taken when the event was received, used for the whole event.
+     */
+    public PrintConfigSnapshot getConfigSnapshot() {
+        return configSnapshot;
+    }
+
+    public void add(PrinterEndpoint printer, PrintDocument document) {
+        printerDocuments.computeIfAbsent(printer.getPrinterKey(), k -> new PrinterDocuments(printer))
+                .documents.add(document);
+    }
+
+    /**
+     * Remember a dedup key claimed for the batch, to release it if no document of the key is submitted.
+     */
+    public void addClaimedDedupKey(long keyHash) {
+        claimedDedupKeys.add(keyHash);
+    }
+
+    public List<Long> getClaimedDedupKeys() {
+        return claimedDedupKeys;
+    }
+
+    /**
+     * Remember the dedup key of a document added to the batch, to record it once the batch is submitted.
+     */
+    public void addDedupKey(long keyHash) {
+        dedupKeys.add(keyHash);
+    }
+
+    public List<Long> getDedupKeys() {
+        return dedupKeys;
+    }
+
+    public void submit(PrintJobDispatcher dispatcher) {
+        PrintPluginConfig pluginConfig = configSnapshot.getPluginConfig();
+        int batchSize = Math.max(1, pluginConfig.getPrintBatchMaxSize());
+        printerDocuments.values().forEach(printer -> ListUtils.partition(printer.documents, batchSize)
+                .forEach(documents -> dispatcher.submit(PrintJob.builder()
+                        .eventId(eventId)
+                        .workStationId(workStationId)
+                        .printNode(printNode)
+                        .eventStartNanos(eventStartNanos)
+                        .printer(printer.printer)
+                        .printServerClientConfig(pluginConfig.getPrintServerClientConfig())
+                        .spoolPdf(pluginConfig.isPdfSpoolEnabled())
+                        .pdfSpoolDir(pluginConfig.getPdfSpoolDir())
+                        .labelServiceClientConfig(pluginConfig.getLabelServiceClientConfig())
+                        .documents(new ArrayList<>(documents))
+                        .maxAttempts(pluginConfig.getPrintMaxAttempts())
+                        .retryBackoffMillis(pluginConfig.getPrintRetryBackoffMillis())
+                        .deadLetterFile(pluginConfig.getDeadLetterFile())
+                        .build())));
+        printerDocuments.clear();
+    }
+
+    private static class PrinterDocuments {
+        private final PrinterEndpoint printer;
+        private final List<PrintDocument> documents = new ArrayList<>();
+
+        private PrinterDocuments(PrinterEndpoint printer) {
+            this.printer = printer;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.swms.plugins.print.queue;
+
+import com.swms.common.utils.utils.JsonUtils;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file of print documents that still failed after all retries, one json record per line, at the
+ * {@link PrintJob#getDeadLetterFile() dead letter file} of the job.
+ * <p>
+ * A record holds the station, print node, wave no and label type of the document, enough to replay it as a print
+ * event, and the pdf url if it was resolved: it is null when the label service request itself failed.
+ */
+@Slf4j
+public class PrintDeadLetterStore {
+
+    public static final String STAGE_RESOLVE_PDF_URL = "resolve_pdf_url";
+    public static final String STAGE_PRINT = "print";
+
+    public synchronized void write(PrintJob job, PrintDocument document, Exception cause) {
+        DeadLetterRecord record = new DeadLetterRecord();
+        record.setEventId(job.getEventId());
+        record.setWorkStationId(job.getWorkStationId());
+        record.setPrintNode(job.getPrintNode() == null ? null : job.getPrintNode().name());
+        record.setWaveNo(document.getWaveNo());
+        record.setLabelType(document.getLabelType() == null ? null : document.getLabelType().name());
+        record.setPrinter(job.getPrinterKey());
+        record.setStage(document.getPdfUrl() == null ? STAGE_RESOLVE_PDF_URL : STAGE_PRINT);
+        record.setDocument(document.getPdfUrl());
+        record.setAttempts(job.getAttempts());
+        record.setError(cause == null ? null : cause.toString());
+        record.setFailedTime(System.currentTimeMillis());
+
+        if (job.getDeadLetterFile() == null) {
+            log.error("No print dead letter file configured, record: {}", JsonUtils.obj2String(record));
+            return;
+        }
+        try {
+            Path file = Path.of(job.getDeadLetterFile());
+            Path parent = file.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.writeString(file, JsonUtils.obj2String(record) + System.lineSeparator(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.error("Failed to write print dead letter, record: {}", record, e);
+        }
+    }
+
+    @Data
+    public static class DeadLetterRecord {
+        private String eventId;
+        private Long workStationId;
+        private String printNode;
+        private String waveNo;
+        private String labelType;
+        private String printer;
+        // 失败的阶段：请求 label 服务解析 pdf url，或发送到打印服务
+        private String stage;
+        private String document;
+        private int attempts;
+        private String error;
+        private long failedTime;
+    }
+}
@@ -0,0 +1,41 @@
+package com.swms.plugins.print.queue;
+
+import com.swms.wms.api.printer.constants.LabelTypeEnum;
+import lombok.Getter;
+
+import java.util.concurrent.Callable;
+
+/**
+ * One document of a print job.
+ * <p>
+ * The pdf url is resolved lazily, so slow label service calls run on the printer queue instead of the print event
+ * thread.
+ */
+@Getter
+public class PrintDocument {
+
+    private final String waveNo;
+    private final LabelTypeEnum labelType;
+
+    // Resolve the pdf url, return null if there is nothing to print
+    private final Callable<String> pdfUrlResolver;
+
+    // 已经解析出来的 pdf url，重试时不再重复请求 label 服务
+    private volatile String pdfUrl;
+    // 已打印或无需打印
+    private volatile boolean done;
+
+    public PrintDocument(String waveNo, LabelTypeEnum labelType, Callable<String> pdfUrlResolver) {
+        this.waveNo = waveNo;
+        this.labelType = labelType;
+        this.pdfUrlResolver = pdfUrlResolver;
+    }
+
+    void setPdfUrl(String pdfUrl) {
+        this.pdfUrl = pdfUrl;
+    }
+
+    void markDone() {
+        this.done = true;
+    }
+}
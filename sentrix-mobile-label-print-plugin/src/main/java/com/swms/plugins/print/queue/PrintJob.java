@@ -0,0 +1,65 @@
+package com.swms.plugins.print.queue;
+
+import com.swms.plugins.print.config.HttpClientConfig;
+import com.swms.plugins.print.config.PrinterEndpoint;
+import com.swms.wms.api.printer.constants.PrintNodeEnum;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Documents of one print event sent to one printer in a single print request.
+ */
+@Getter
+@Builder
+public class PrintJob {
+
+    private final String eventId;
+    private final Long workStationId;
+    private final PrintNodeEnum printNode;
+    // 收到打印事件的时间，System.nanoTime()
+    private final long eventStartNanos;
+
+    // 配置的打印机，熔断时 target 切换到它的备用打印机
+    private final PrinterEndpoint printer;
+    private volatile PrinterEndpoint target;
+    private final HttpClientConfig printServerClientConfig;
+
+    // 是否先下载 pdf 到缓存目录再发送内容，下载使用 label 服务的超时配置
+    private final boolean spoolPdf;
+    private final String pdfSpoolDir;
+    private final HttpClientConfig labelServiceClientConfig;
+
+    // In print order
+    private final List<PrintDocument> documents;
+
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final String deadLetterFile;
+
+    private volatile int attempts;
+
+    /**
+     * The printer the job is queued on and sent to.
+     */
+    public PrinterEndpoint getTarget() {
+        return target == null ? printer : target;
+    }
+
+    public String getPrinterKey() {
+        return getTarget().getPrinterKey();
+    }
+
+    public List<PrintDocument> getPendingDocuments() {
+        return documents.stream().filter(v -> !v.isDone()).toList();
+    }
+
+    void routeTo(PrinterEndpoint target) {
+        this.target = target;
+    }
+
+    int incrementAttempts() {
+        return ++attempts;
+    }
+}
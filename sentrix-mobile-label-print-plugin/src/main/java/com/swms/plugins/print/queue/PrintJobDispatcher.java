@@ -0,0 +1,344 @@
+package com.swms.plugins.print.queue;
+
+import com.swms.plugins.print.config.PrinterEndpoint;
+import com.swms.plugins.print.health.PrinterHealthTracker;
+import com.swms.plugins.print.metrics.PrintMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per printer print job queues.
+ * <p>
+ * Jobs of one printer are printed one by one in submission order; a failed job is retried with exponential backoff
+ * and blocks the jobs behind it, so slot order is kept. Different printers are drained in parallel, throttled by
+ * the size of the worker pool. Documents that still fail after all attempts go to the dead letter store.
+ * <p>
+ * When a multi document request fails, its documents are sent one by one so that the failure is known per document
+ * and only the failed documents are retried.
+ * <p>
+ * Jobs are routed by {@link PrinterHealthTracker}: jobs of a printer with an open circuit are queued on its first
+ * available backup printer, and jobs already queued on it are moved there, instead of waiting for its timeouts. When
+ * no backup is available the queue is parked until the circuit lets its probe through, no request is sent and no
+ * attempt is spent meanwhile.
+ * <p>
+ * {@link #close(long)} lets the queues drain for a while, then stops the threads and moves the documents of the jobs
+ * still queued, and of jobs submitted afterwards, to the dead letter store.
+ */
+@Slf4j
+public class PrintJobDispatcher {
+
+    // 每次最多连续处理的任务数，之后让出线程给其他打印机
+    private static final int MAX_JOBS_PER_DRAIN = 16;
+
+    private final PrintJobHandler handler;
+    private final PrintDeadLetterStore deadLetterStore;
+    private final PrinterHealthTracker healthTracker;
+    private final PrintMetrics printMetrics;
+    private final Map<String, PrinterQueue> printerQueues = new ConcurrentHashMap<>();
+
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryScheduler;
+
+    private volatile boolean closed;
+
+    public PrintJobDispatcher(int maxParallelPrinters, PrintJobHandler handler, PrintDeadLetterStore deadLetterStore,
+                              PrinterHealthTracker healthTracker, PrintMetrics printMetrics) {
+        this.handler = handler;
+        this.deadLetterStore = deadLetterStore;
+        this.healthTracker = healthTracker;
+        this.printMetrics = printMetrics;
+        this.workers = new ThreadPoolExecutor(maxParallelPrinters, maxParallelPrinters, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreadFactory("sentrix-mobile-label-print-"));
+        this.retryScheduler = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("sentrix-mobile-label-print-retry-"));
+    }
+
+    public void submit(PrintJob job) {
+        if (closed) {
+            deadLetter(job, new IllegalStateException("Print job dispatcher is closed"));
+            return;
+        }
+        job.routeTo(healthTracker.route(job.getPrinter()));
+        PrinterQueue printerQueue = printerQueues.computeIfAbsent(job.getPrinterKey(), PrinterQueue::new);
+        synchronized (printerQueue) {
+            printerQueue.jobs.addLast(job);
+            if (printerQueue.scheduled) {
+                return;
+            }
+            printerQueue.scheduled = true;
+        }
+        scheduleDrain(printerQueue, 0);
+    }
+
+    /**
+     * Wait up to the drain timeout for the queued jobs to be printed, then stop the worker and retry threads and move
+     * the documents of the jobs left to the dead letter store.
+     */
+    public void close(long drainTimeoutMillis) {
+        closed = true;
+        long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+        try {
+            while (hasQueuedJobs() && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+            retryScheduler.shutdownNow();
+            workers.shutdownNow();
+            if (!workers.awaitTermination(drainTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Print workers did not stop in {} ms", drainTimeoutMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            retryScheduler.shutdownNow();
+            workers.shutdownNow();
+        }
+
+        IllegalStateException cause = new IllegalStateException("Print job dispatcher is closed");
+        printerQueues.values().forEach(printerQueue -> {
+            List<PrintJob> jobs;
+            synchronized (printerQueue) {
+                jobs = new ArrayList<>(printerQueue.jobs);
+                printerQueue.jobs.clear();
+            }
+            if (!jobs.isEmpty()) {
+                log.warn("Print job dispatcher closed, move {} queued jobs to dead letter, printer: {}",
+                        jobs.size(), printerQueue.printerKey);
+            }
+            jobs.forEach(job -> deadLetter(job, cause));
+        });
+    }
+
+    private boolean hasQueuedJobs() {
+        for (PrinterQueue printerQueue : printerQueues.values()) {
+            synchronized (printerQueue) {
+                if (!printerQueue.jobs.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int queueDepth(String printerKey) {
+        PrinterQueue printerQueue = printerQueues.get(printerKey);
+        if (printerQueue == null) {
+            return 0;
+        }
+        synchronized (printerQueue) {
+            return printerQueue.jobs.size();
+        }
+    }
+
+    private void drain(PrinterQueue printerQueue) {
+        for (int i = 0; i < MAX_JOBS_PER_DRAIN; i++) {
+            if (!healthTracker.isAvailable(printerQueue.printerKey)) {
+                rerouteQueuedJobs(printerQueue);
+            }
+
+            PrintJob job;
+            synchronized (printerQueue) {
+                job = printerQueue.jobs.peekFirst();
+                if (job == null) {
+                    printerQueue.scheduled = false;
+                    return;
+                }
+            }
+
+            long unavailableMillis = healthTracker.millisUntilAvailable(printerQueue.printerKey);
+            if (unavailableMillis > 0) {
+                // 主备打印机都不可用，任务留在队列中，等熔断结束后的探测请求
+                log.warn("Printer and its backups are unavailable, park queue for {} ms, printer: {}",
+                        unavailableMillis, printerQueue.printerKey);
+                scheduleDrain(printerQueue, unavailableMillis);
+                return;
+            }
+
+            Exception failure = execute(job);
+            if (failure != null && job.getAttempts() < job.getMaxAttempts()) {
+                // 打印机已熔断且有可用的备用打印机，立即在备用打印机上重试
+                if (!healthTracker.isAvailable(printerQueue.printerKey) && rerouteQueuedJobs(printerQueue)) {
+                    continue;
+                }
+                // 熔断期间不消耗重试次数
+                long backoff = Math.max(job.getRetryBackoffMillis() << Math.min(job.getAttempts() - 1, 10),
+                        healthTracker.millisUntilAvailable(printerQueue.printerKey));
+                log.warn("Print job failed, retry after {} ms, printer: {}, event id: {}, attempts: {}",
+                        backoff, printerQueue.printerKey, job.getEventId(), job.getAttempts(), failure);
+                // 队头任务保留在队列中，重试前不打印后面的任务，保证顺序
+                scheduleDrain(printerQueue, backoff);
+                return;
+            }
+
+            if (failure != null) {
+                log.error("Print job failed after {} attempts, move {} documents to dead letter, printer: {}, event id: {}",
+                        job.getAttempts(), job.getPendingDocuments().size(), printerQueue.printerKey, job.getEventId(), failure);
+                deadLetter(job, failure);
+            }
+
+            synchronized (printerQueue) {
+                printerQueue.jobs.pollFirst();
+            }
+        }
+
+        scheduleDrain(printerQueue, 0);
+    }
+
+    private void scheduleDrain(PrinterQueue printerQueue, long delayMillis) {
+        try {
+            if (delayMillis <= 0) {
+                workers.execute(() -> drain(printerQueue));
+            } else {
+                retryScheduler.schedule(() -> scheduleDrain(printerQueue, 0), delayMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            // 已关闭，剩余的任务在关闭时写入死信
+            log.debug("Print job dispatcher is closed, stop draining printer: {}", printerQueue.printerKey);
+        }
+    }
+
+    private void deadLetter(PrintJob job, Exception cause) {
+        job.getPendingDocuments().forEach(document -> {
+            deadLetterStore.write(job, document, cause);
+            printMetrics.countOutcome(PrintMetrics.OUTCOME_FAILED, job.getWorkStationId(), document.getLabelType(), job.getPrintNode());
+        });
+    }
+
+    /**
+     * Move the queued jobs that route to another printer to the queue of that printer, keeping their order.
+     *
+     * @return true if the head job was moved
+     */
+    private boolean rerouteQueuedJobs(PrinterQueue printerQueue) {
+        List<PrintJob> reroutedJobs = new ArrayList<>();
+        boolean headRerouted = false;
+        synchronized (printerQueue) {
+            Iterator<PrintJob> iterator = printerQueue.jobs.iterator();
+            boolean head = true;
+            while (iterator.hasNext()) {
+                PrintJob job = iterator.next();
+                PrinterEndpoint target = healthTracker.route(job.getPrinter());
+                if (!target.getPrinterKey().equals(printerQueue.printerKey)) {
+                    iterator.remove();
+                    reroutedJobs.add(job);
+                    headRerouted |= head;
+                }
+                head = false;
+            }
+        }
+
+        if (!reroutedJobs.isEmpty()) {
+            log.warn("Printer is unavailable, move {} queued jobs to backup printers, printer: {}",
+                    reroutedJobs.size(), printerQueue.printerKey);
+            reroutedJobs.forEach(this::submit);
+        }
+        return headRerouted;
+    }
+
+    private Exception execute(PrintJob job) {
+        job.incrementAttempts();
+        try {
+            for (PrintDocument document : job.getPendingDocuments()) {
+                if (document.getPdfUrl() != null) {
+                    continue;
+                }
+                String pdfUrl = document.getPdfUrlResolver().call();
+                if (pdfUrl == null) {
+                    log.info("Nothing to print, printer: {}, wave no: {}, label type: {}",
+                            job.getPrinterKey(), document.getWaveNo(), document.getLabelType());
+                    document.markDone();
+                    printMetrics.countOutcome(PrintMetrics.OUTCOME_SKIPPED_NO_PDF, job.getWorkStationId(), document.getLabelType(), job.getPrintNode());
+                } else {
+                    document.setPdfUrl(pdfUrl);
+                }
+            }
+        } catch (Exception e) {
+            return e;
+        }
+
+        List<PrintDocument> documents = job.getPendingDocuments();
+        if (documents.isEmpty()) {
+            return null;
+        }
+
+        try {
+            print(job, documents);
+            documents.forEach(document -> printed(job, document));
+            return null;
+        } catch (Exception e) {
+            if (documents.size() == 1) {
+                return e;
+            }
+            log.warn("Print {} documents in one request failed, print them one by one, printer: {}, event id: {}",
+                    documents.size(), job.getPrinterKey(), job.getEventId(), e);
+        }
+
+        Exception lastFailure = null;
+        for (PrintDocument document : documents) {
+            try {
+                print(job, List.of(document));
+                printed(job, document);
+            } catch (Exception e) {
+                log.warn("Print document failed, printer: {}, wave no: {}, label type: {}, pdf url: {}",
+                        job.getPrinterKey(), document.getWaveNo(), document.getLabelType(), document.getPdfUrl(), e);
+                lastFailure = e;
+            }
+        }
+        return lastFailure;
+    }
+
+    private void print(PrintJob job, List<PrintDocument> documents) throws Exception {
+        String printerKey = job.getPrinterKey();
+        if (!healthTracker.tryAcquire(printerKey)) {
+            throw new IllegalStateException("Printer circuit is open, printer: " + printerKey);
+        }
+        long startTime = System.nanoTime();
+        try {
+            handler.print(job, documents);
+            healthTracker.recordSuccess(printerKey, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        } catch (Exception e) {
+            healthTracker.recordFailure(printerKey, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            throw e;
+        } finally {
+            printMetrics.recordStage(PrintMetrics.STAGE_PRINT_REQUEST, System.nanoTime() - startTime);
+        }
+    }
+
+    private void printed(PrintJob job, PrintDocument document) {
+        document.markDone();
+        printMetrics.countOutcome(PrintMetrics.OUTCOME_PRINTED, job.getWorkStationId(), document.getLabelType(), job.getPrintNode());
+        printMetrics.recordEventLatency(job.getEventStartNanos(), job.getWorkStationId(), document.getLabelType(), job.getPrintNode());
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class PrinterQueue {
+        private final String printerKey;
+        private final Deque<PrintJob> jobs = new ArrayDeque<>();
+        private boolean scheduled;
+
+        private PrinterQueue(String printerKey) {
+            this.printerKey = printerKey;
+        }
+    }
+}
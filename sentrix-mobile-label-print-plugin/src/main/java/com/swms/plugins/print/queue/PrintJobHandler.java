@@ -0,0 +1,13 @@
+package com.swms.plugins.print.queue;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface PrintJobHandler {
+
+    /**
+     * Send the resolved documents to the printer of the job in one request, throw if the print server did not
+     * accept them.
+     */
+    void print(PrintJob job, List<PrintDocument> documents) throws Exception;
+}
@@ -0,0 +1,56 @@
+package com.swms.plugins.print.resolve;
+
+import com.swms.wms.api.outbound.dto.OutboundPlanOrderDTO;
+import com.swms.wms.api.task.dto.TransferContainerRecordDTO;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * WMS data to resolve the label and a4 paper urls of the waves of one print event, loaded once for all the waves
+ * instead of several queries per wave.
+ */
+public class WaveLabelResolution {
+
+    private final Map<String, List<OutboundPlanOrderDTO>> waveOutboundPlanOrders;
+    private final Map<String, List<TransferContainerRecordDTO>> waveTransferContainerRecords;
+    private final Map<String, Boolean> waveHasA4PdfUrl;
+
+    public WaveLabelResolution(Map<String, List<OutboundPlanOrderDTO>> waveOutboundPlanOrders,
+                               Map<String, List<TransferContainerRecordDTO>> waveTransferContainerRecords,
+                               Map<String, Boolean> waveHasA4PdfUrl) {
+        this.waveOutboundPlanOrders = waveOutboundPlanOrders;
+        this.waveTransferContainerRecords = waveTransferContainerRecords;
+        this.waveHasA4PdfUrl = waveHasA4PdfUrl;
+    }
+
+    public List<OutboundPlanOrderDTO> getOutboundPlanOrders(String waveNo) {
+        return waveOutboundPlanOrders.getOrDefault(waveNo, List.of());
+    }
+
+    public List<TransferContainerRecordDTO> getTransferContainerRecords(String waveNo) {
+        return waveTransferContainerRecords.getOrDefault(waveNo, List.of());
+    }
+
+    public boolean hasA4PdfUrl(String waveNo) {
+        return Boolean.TRUE.equals(waveHasA4PdfUrl.get(waveNo));
+    }
+
+    /**
+     * Load the resolution on first use only, so prints served from the cache make no query at all.
+     */
+    public static Supplier<WaveLabelResolution> lazy(Supplier<WaveLabelResolution> loader) {
+        return new Supplier<>() {
+            private WaveLabelResolution resolution;
+
+            @Override
+            public synchronized WaveLabelResolution get() {
+                if (resolution == null) {
+                    resolution = loader.get();
+                }
+                return resolution;
+            }
+        };
+    }
+}
@@ -0,0 +1,172 @@
+package com.swms.plugins.print.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrintDedupWindowTest {
+
+    private static final long NOW = 1_000_000L;
+    private static final int PROBES = 8;
+
+    @Test
+    void keyExpiresAfterTtl() {
+        PrintDedupWindow window = new PrintDedupWindow(1024);
+        window.record(42L, NOW, 100);
+
+        assertTrue(window.contains(42L, NOW));
+        assertTrue(window.contains(42L, NOW + 99));
+        assertFalse(window.contains(42L, NOW + 100));
+    }
+
+    @Test
+    void recordAgainExtendsTtl() {
+        PrintDedupWindow window = new PrintDedupWindow(1024);
+        window.record(42L, NOW, 100);
+        window.record(42L, NOW + 50, 100);
+
+        assertTrue(window.contains(42L, NOW + 120));
+        assertFalse(window.contains(42L, NOW + 150));
+    }
+
+    @Test
+    void keyIsClaimedOnce() {
+        PrintDedupWindow window = new PrintDedupWindow(1024);
+
+        assertTrue(window.tryClaim(42L, NOW, 100));
+        assertFalse(window.tryClaim(42L, NOW + 1, 100));
+        assertTrue(window.contains(42L, NOW + 1));
+        assertTrue(window.tryClaim(42L, NOW + 100, 100));
+    }
+
+    @Test
+    void releasedClaimCanBeClaimedAgain() {
+        PrintDedupWindow window = new PrintDedupWindow(1024);
+        assertTrue(window.tryClaim(42L, NOW, 100));
+        window.release(42L);
+
+        assertFalse(window.contains(42L, NOW));
+        assertTrue(window.tryClaim(42L, NOW, 100));
+    }
+
+    @Test
+    void recordedKeyCannotBeClaimed() {
+        PrintDedupWindow window = new PrintDedupWindow(1024);
+        window.record(42L, NOW, 100);
+
+        assertFalse(window.tryClaim(42L, NOW + 50, 100));
+        // 认领失败不延长已记录的 key
+        assertFalse(window.contains(42L, NOW + 100));
+    }
+
+    @Test
+    void concurrentClaimsHaveOneWinner() throws Exception {
+        PrintDedupWindow window = new PrintDedupWindow(1024);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> claims = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                claims.add(executor.submit(() -> {
+                    start.await();
+                    return window.tryClaim(42L, 60_000);
+                }));
+            }
+            start.countDown();
+
+            int winners = 0;
+            for (Future<Boolean> claim : claims) {
+                winners += claim.get(5, TimeUnit.SECONDS) ? 1 : 0;
+            }
+            assertEquals(1, winners);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void expiredSlotIsReused() {
+        PrintDedupWindow window = new PrintDedupWindow(0);
+        // 同一条带、同一起始槽，占满探测范围
+        for (int i = 1; i <= PROBES; i++) {
+            window.record(sameSlotKey(0, i), NOW, 10);
+        }
+        window.record(sameSlotKey(0, PROBES + 1), NOW + 20, 10);
+
+        assertTrue(window.contains(sameSlotKey(0, PROBES + 1), NOW + 20));
+        for (int i = 1; i <= PROBES; i++) {
+            assertFalse(window.contains(sameSlotKey(0, i), NOW + 20));
+        }
+    }
+
+    @Test
+    void fullProbeRangeOverwritesTheKeyExpiringFirst() {
+        PrintDedupWindow window = new PrintDedupWindow(0);
+        for (int i = 1; i <= PROBES; i++) {
+            window.record(sameSlotKey(0, i), NOW, 100 + i);
+        }
+        window.record(sameSlotKey(0, PROBES + 1), NOW, 1000);
+
+        assertFalse(window.contains(sameSlotKey(0, 1), NOW));
+        for (int i = 2; i <= PROBES + 1; i++) {
+            assertTrue(window.contains(sameSlotKey(0, i), NOW));
+        }
+    }
+
+    @Test
+    void stripesDoNotEvictEachOther() {
+        PrintDedupWindow window = new PrintDedupWindow(0);
+        for (int i = 1; i <= PROBES; i++) {
+            window.record(sameSlotKey(0, i), NOW, 100);
+        }
+        // 另一条带的同一槽位
+        for (int i = 1; i <= PROBES; i++) {
+            window.record(sameSlotKey(1, i), NOW, 100);
+        }
+
+        for (int i = 1; i <= PROBES; i++) {
+            assertTrue(window.contains(sameSlotKey(0, i), NOW));
+            assertTrue(window.contains(sameSlotKey(1, i), NOW));
+        }
+    }
+
+    @Test
+    void hashesSpreadOverAllStripes() {
+        Set<Long> stripes = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            stripes.add(PrintDedupWindow.hash(String.valueOf(i)) >>> 60);
+            stripes.add(PrintDedupWindow.hash(i, "WAVE_" + i, null) >>> 60);
+        }
+        assertEquals(16, stripes.size());
+    }
+
+    @Test
+    void labelHashDependsOnStationWaveAndLabelType() {
+        long hash = PrintDedupWindow.hash(1, "WAVE_1", Thread.State.NEW);
+
+        assertEquals(hash, PrintDedupWindow.hash(1, "WAVE_1", Thread.State.NEW));
+        assertTrue(hash != PrintDedupWindow.hash(2, "WAVE_1", Thread.State.NEW));
+        assertTrue(hash != PrintDedupWindow.hash(1, "WAVE_2", Thread.State.NEW));
+        assertTrue(hash != PrintDedupWindow.hash(1, "WAVE_1", Thread.State.RUNNABLE));
+    }
+
+    /**
+     * A key in the given stripe whose probing starts at slot 0, distinct per index.
+     */
+    private static long sameSlotKey(int stripe, int index) {
+        return ((long) stripe << 60) | ((long) index << 16);
+    }
+}
@@ -0,0 +1,101 @@
+package com.swms.plugins.print.queue;
+
+import com.swms.plugins.print.config.PrintConfig;
+import com.swms.plugins.print.config.PrinterEndpoint;
+import com.swms.plugins.print.health.PrinterHealthTracker;
+import com.swms.plugins.print.metrics.PrintMetrics;
+import com.swms.wms.api.printer.constants.LabelTypeEnum;
+import com.swms.wms.api.printer.constants.PrintNodeEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrintJobDispatcherTest {
+
+    private final List<String> printedWaveNos = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> deadLetterWaveNos = Collections.synchronizedList(new ArrayList<>());
+
+    private final PrintDeadLetterStore deadLetterStore = new PrintDeadLetterStore() {
+        @Override
+        public synchronized void write(PrintJob job, PrintDocument document, Exception cause) {
+            deadLetterWaveNos.add(document.getWaveNo());
+        }
+    };
+
+    @Test
+    void closeDrainsQueuedJobs() {
+        PrintJobDispatcher dispatcher = newDispatcher((job, documents) -> {
+            TimeUnit.MILLISECONDS.sleep(20);
+            documents.forEach(document -> printedWaveNos.add(document.getWaveNo()));
+        });
+        for (int i = 1; i <= 3; i++) {
+            dispatcher.submit(job("WAVE_" + i));
+        }
+
+        dispatcher.close(5000);
+
+        assertEquals(List.of("WAVE_1", "WAVE_2", "WAVE_3"), printedWaveNos);
+        assertTrue(deadLetterWaveNos.isEmpty());
+    }
+
+    @Test
+    void closeMovesJobsLeftToDeadLetter() throws Exception {
+        CountDownLatch printing = new CountDownLatch(1);
+        PrintJobDispatcher dispatcher = newDispatcher((job, documents) -> {
+            printing.countDown();
+            // 打印服务一直不返回，直到关闭时被中断
+            new CountDownLatch(1).await();
+        });
+        dispatcher.submit(job("WAVE_1"));
+        dispatcher.submit(job("WAVE_2"));
+        assertTrue(printing.await(5, TimeUnit.SECONDS));
+
+        dispatcher.close(100);
+
+        assertTrue(printedWaveNos.isEmpty());
+        assertEquals(List.of("WAVE_1", "WAVE_2"), deadLetterWaveNos);
+    }
+
+    @Test
+    void jobSubmittedAfterCloseGoesToDeadLetter() {
+        PrintJobDispatcher dispatcher = newDispatcher((job, documents) ->
+                documents.forEach(document -> printedWaveNos.add(document.getWaveNo())));
+        dispatcher.close(100);
+
+        dispatcher.submit(job("WAVE_1"));
+
+        assertTrue(printedWaveNos.isEmpty());
+        assertEquals(List.of("WAVE_1"), deadLetterWaveNos);
+    }
+
+    private PrintJobDispatcher newDispatcher(PrintJobHandler handler) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new PrintJobDispatcher(2, handler, deadLetterStore,
+                new PrinterHealthTracker(20, 5, 0.5, 30_000, meterRegistry), new PrintMetrics(meterRegistry));
+    }
+
+    private static PrintJob job(String waveNo) {
+        PrintConfig printConfig = new PrintConfig();
+        printConfig.setPrintName("printer");
+        printConfig.setHost("localhost");
+        printConfig.setPort(8080);
+        return PrintJob.builder()
+                .eventId(waveNo)
+                .workStationId(1L)
+                .printNode(PrintNodeEnum.PRINT_NODE_SCAN_LOCATION_CODE)
+                .eventStartNanos(System.nanoTime())
+                .printer(new PrinterEndpoint(printConfig))
+                .documents(List.of(new PrintDocument(waveNo, LabelTypeEnum.LABEL, () -> "http://label/" + waveNo)))
+                .maxAttempts(3)
+                .retryBackoffMillis(10)
+                .build();
+    }
+}
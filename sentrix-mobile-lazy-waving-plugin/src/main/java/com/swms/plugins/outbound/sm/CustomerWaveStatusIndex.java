@@ -0,0 +1,121 @@
+package com.swms.plugins.outbound.sm;
+
+import com.swms.wms.api.outbound.constants.OutboundPlanOrderStatusEnum;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Number of orders past {@link OutboundPlanOrderStatusEnum#ASSIGNED} in each customer wave. A wave with such an order
+ * is started.
+ * <p>
+ * Orders only move forward from NEW and ASSIGNED, so a started wave stays started and is answered from memory. A wave
+ * not started yet is answered from memory for {@code coldWaveTtlMillis} after it was loaded, then loaded again. Status
+ * changes pushed with {@link #onOrderStatusChanged} keep the counts up to date in between, so a wave that starts is
+ * seen at once. At most {@code maxWaves} waves are kept, least recently used first out.
+ */
+@Slf4j
+public class CustomerWaveStatusIndex {
+
+    private final Function<Set<String>, Map<String, Integer>> loader;
+    private final long coldWaveTtlMillis;
+
+    // customerWaveNo >>> status, in access order, guarded by this
+    private final LinkedHashMap<String, WaveStatus> waves;
+
+    /**
+     * @param loader count the orders past ASSIGNED of each customer wave, waves without any may be left out
+     */
+    public CustomerWaveStatusIndex(Function<Set<String>, Map<String, Integer>> loader, long coldWaveTtlMillis, int maxWaves) {
+        this.loader = loader;
+        this.coldWaveTtlMillis = coldWaveTtlMillis;
+        this.waves = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, WaveStatus> eldest) {
+                return size() > maxWaves;
+            }
+        };
+    }
+
+    public static boolean isStarted(OutboundPlanOrderStatusEnum status) {
+        return status != null && OutboundPlanOrderStatusEnum.NEW != status && OutboundPlanOrderStatusEnum.ASSIGNED != status;
+    }
+
+    /**
+     * @return the started waves among the given ones
+     */
+    public Set<String> findStartedWaves(Collection<String> customerWaveNos) {
+        long now = System.currentTimeMillis();
+        Set<String> started = new HashSet<>();
+        Set<String> unknown = new HashSet<>();
+        synchronized (this) {
+            for (String customerWaveNo : customerWaveNos) {
+                WaveStatus status = waves.get(customerWaveNo);
+                if (status == null || status.startedOrders == 0 && now - status.loadedAt >= coldWaveTtlMillis) {
+                    unknown.add(customerWaveNo);
+                } else if (status.startedOrders > 0) {
+                    started.add(customerWaveNo);
+                }
+            }
+        }
+        if (unknown.isEmpty()) {
+            return started;
+        }
+
+        Map<String, Integer> startedOrderCounts = loader.apply(unknown);
+        synchronized (this) {
+            for (String customerWaveNo : unknown) {
+                WaveStatus status = waves.computeIfAbsent(customerWaveNo, k -> new WaveStatus());
+                // 加载期间推送的变化可能已经计入
+                status.startedOrders = Math.max(status.startedOrders, startedOrderCounts.getOrDefault(customerWaveNo, 0));
+                status.loadedAt = now;
+                if (status.startedOrders > 0) {
+                    started.add(customerWaveNo);
+                }
+            }
+        }
+        log.debug("find started customer waves, waves: {}, loaded: {}, started: {}", customerWaveNos.size(), unknown.size(), started.size());
+        return started;
+    }
+
+    /**
+     * Apply an order status change pushed by the outbound plan order owner.
+     */
+    public synchronized void onOrderStatusChanged(String customerWaveNo, OutboundPlanOrderStatusEnum fromStatus,
+                                                  OutboundPlanOrderStatusEnum toStatus) {
+        boolean wasStarted = isStarted(fromStatus);
+        boolean nowStarted = isStarted(toStatus);
+        if (wasStarted == nowStarted) {
+            return;
+        }
+
+        WaveStatus status = waves.get(customerWaveNo);
+        if (nowStarted) {
+            if (status == null) {
+                // 未加载的波次只知道已开始，数量为下限
+                status = new WaveStatus();
+                status.loadedAt = System.currentTimeMillis();
+                waves.put(customerWaveNo, status);
+            }
+            status.startedOrders++;
+        } else if (status != null && --status.startedOrders <= 0) {
+            // 计数可能不准，下次查询时重新加载
+            waves.remove(customerWaveNo);
+        }
+    }
+
+    public synchronized int countStartedOrders(String customerWaveNo) {
+        WaveStatus status = waves.get(customerWaveNo);
+        return status == null ? 0 : status.startedOrders;
+    }
+
+    private static class WaveStatus {
+        private int startedOrders;
+        private long loadedAt;
+    }
+}
@@ -4,6 +4,7 @@ import com.swms.api.platform.api.ICallbackApi;
 import com.swms.api.platform.api.constants.CallbackApiTypeEnum;
 import com.swms.common.utils.http.Response;
 import com.swms.plugin.extend.wms.outbound.IOutboundWavePickingPlugin;
+import com.swms.plugins.common.PluginStopListener;
 import com.swms.wms.api.outbound.IOutboundPlanOrderApi;
 import com.swms.wms.api.outbound.constants.OutboundPlanOrderStatusEnum;
 import com.swms.wms.api.outbound.dto.OutboundPlanOrderDTO;
@@ -12,12 +13,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.pf4j.Extension;
+import org.pf4j.PluginManager;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -25,6 +29,8 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class LazyOutboundWavePickingPlugin implements IOutboundWavePickingPlugin {
 
+    private static final String PLUGIN_ID = "Sentrix-Mobile-Lazy-Waving-Plugin-0.0.1";
+
     private static final String WAREHOUSE_CODE = "MOBILESENTRIX";
 
     private static final String GET_PACKING_STATUS_API_CODE = "GET_PACKING_STATUS";
@@ -32,26 +38,40 @@ public class LazyOutboundWavePickingPlugin implements IOutboundWavePickingPlugin
     // 打包台状态：在线
     private static final String PACKING_STATUS_1 = "1";
 
+    // 打包台状态的刷新间隔和最长可信时间
+    private static final long PACKING_STATUS_TTL_MILLIS = Long.getLong("sentrix.lazy-waving.packing-status-ttl-millis", 5_000);
+    private static final long PACKING_STATUS_STALENESS_LIMIT_MILLIS = Long.getLong("sentrix.lazy-waving.packing-status-staleness-limit-millis", 60_000);
+
+    // 内存中记录的波次数量上限，以及未开始的波次重新查询的间隔，订单状态变化推送后立即生效
+    private static final int CUSTOMER_WAVE_STATUS_INDEX_MAX_WAVES = 100_000;
+    private static final long COLD_WAVE_TTL_MILLIS = Long.getLong("sentrix.lazy-waving.cold-wave-ttl-millis", 10_000);
+
     private final IOutboundPlanOrderApi outboundPlanOrderApi;
     private final ICallbackApi callbackApi;
+    private final PluginManager pluginManager;
+
+    private final AtomicBoolean stopListenerRegistered = new AtomicBoolean();
+
+    private final CustomerWaveStatusIndex customerWaveStatusIndex = new CustomerWaveStatusIndex(this::countStartedOrders,
+            COLD_WAVE_TTL_MILLIS, CUSTOMER_WAVE_STATUS_INDEX_MAX_WAVES);
+
+    private final PackingStatusHolder packingStatusHolder = new PackingStatusHolder(this::loadPackingStatus,
+            PACKING_STATUS_TTL_MILLIS, PACKING_STATUS_STALENESS_LIMIT_MILLIS);
 
     @Override
     public List<List<OutboundPlanOrderDTO>> doOperation(List<OutboundPlanOrderDTO> originalOutboundPlanOrders) {
         log.debug("Receive lazy waving request, original outbound plan orders size: {}", originalOutboundPlanOrders.size());
+        registerStopListener();
 
         Set<String> customerWaveNos = originalOutboundPlanOrders.stream()
             .map(OutboundPlanOrderDTO::getCustomerWaveNo).collect(Collectors.toSet());
-        List<OutboundPlanOrderDTO> outboundPlanOrderDTOS = outboundPlanOrderApi.findByCustomerWaveNos(WAREHOUSE_CODE, customerWaveNos, false);
-
-        Map<String, List<OutboundPlanOrderDTO>> outboundPlanOrderGroupMap = outboundPlanOrderDTOS.stream()
-            .collect(Collectors.groupingBy(OutboundPlanOrderDTO::getCustomerWaveNo));
+        // 已开始的波次从内存中判断，只查询其余波次
+        Set<String> startedCustomerWaveNos = customerWaveStatusIndex.findStartedWaves(customerWaveNos);
 
         // 复核打包台已上线，或者订单波次没有已完成订单，否则就过滤掉，等待打包台上线
         List<OutboundPlanOrderDTO> outboundPlanOrders = originalOutboundPlanOrders.stream()
-            .filter(v -> outboundPlanOrderGroupMap.get(v.getCustomerWaveNo()).stream()
-                .noneMatch(dto -> OutboundPlanOrderStatusEnum.NEW != dto.getOutboundPlanOrderStatus()
-                    && OutboundPlanOrderStatusEnum.ASSIGNED != dto.getOutboundPlanOrderStatus())
-        ).toList();
+            .filter(v -> !startedCustomerWaveNos.contains(v.getCustomerWaveNo()))
+            .toList();
 
         log.debug("After filter, new outbound plan orders size: {}", outboundPlanOrders.size());
 
@@ -65,17 +85,63 @@ public class LazyOutboundWavePickingPlugin implements IOutboundWavePickingPlugin
         return waving(outboundPlanOrders);
     }
 
+    /**
+     * Stop refreshing the packing station status when the plugin stops.
+     */
+    private void registerStopListener() {
+        if (stopListenerRegistered.compareAndSet(false, true)) {
+            pluginManager.addPluginStateListener(new PluginStopListener(PLUGIN_ID, packingStatusHolder::shutdown));
+        }
+    }
+
+    /**
+     * Push an outbound plan order status change to the customer wave status index, e.g. from an order status change
+     * handler of the host.
+     */
+    public void onOutboundPlanOrderStatusChanged(String customerWaveNo, OutboundPlanOrderStatusEnum fromStatus,
+                                                 OutboundPlanOrderStatusEnum toStatus) {
+        customerWaveStatusIndex.onOrderStatusChanged(customerWaveNo, fromStatus, toStatus);
+    }
+
+    /**
+     * Count the orders past ASSIGNED of each customer wave, keeping only the statuses of the loaded orders.
+     */
+    private Map<String, Integer> countStartedOrders(Set<String> customerWaveNos) {
+        Map<String, Integer> startedOrderCounts = new HashMap<>();
+        outboundPlanOrderApi.findByCustomerWaveNos(WAREHOUSE_CODE, customerWaveNos, false).forEach(dto -> {
+            if (CustomerWaveStatusIndex.isStarted(dto.getOutboundPlanOrderStatus())) {
+                startedOrderCounts.merge(dto.getCustomerWaveNo(), 1, Integer::sum);
+            }
+        });
+        return startedOrderCounts;
+    }
+
     private boolean recheckStationIsOnline() {
+        boolean isOnline = packingStatusHolder.isOnline();
+        log.debug("Recheck station online status is : {}", isOnline);
+        return isOnline;
+    }
+
+    /**
+     * Push the packing station status, e.g. from a packing station status callback of the host.
+     *
+     * @param packingStatus {@code 1} if online
+     */
+    public void updatePackingStatus(String packingStatus) {
+        packingStatusHolder.update(PACKING_STATUS_1.equals(packingStatus));
+    }
+
+    /**
+     * @return null if the status cannot be got
+     */
+    private Boolean loadPackingStatus() {
         Response result = callbackApi.callback(CallbackApiTypeEnum.COMMON_CALLBACK, GET_PACKING_STATUS_API_CODE, null);
 
         if (result == null || !Response.SUCCESS_CODE.equals(result.getCode())) {
             log.info("cannot get packing station status, api response is : {}", result);
-            return false;
+            return null;
         }
-
-        boolean isOnline = PACKING_STATUS_1.equals(result.getData());
-        log.debug("Recheck station online status is : {}", isOnline);
-        return isOnline;
+        return PACKING_STATUS_1.equals(result.getData());
     }
 
     private List<List<OutboundPlanOrderDTO>> waving(List<OutboundPlanOrderDTO> outboundPlanOrders) {
@@ -0,0 +1,119 @@
+package com.swms.plugins.outbound.sm;
+
+import com.swms.plugins.common.ThreadContextSnapshot;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * In memory recheck packing station status.
+ * <p>
+ * The first read loads the status, then it is reloaded in the background every {@code ttlMillis}, with the thread
+ * context of the first read. Reads that come while the first load runs take the station as offline. A status pushed
+ * with {@link #update(boolean)} is used at once, until the next reload. A failed reload keeps the last known good
+ * status. A status older than {@code stalenessLimitMillis} is not trusted and the station is taken as offline, as when
+ * the status cannot be loaded at all. The reloads stop with {@link #shutdown()}.
+ */
+@Slf4j
+public class PackingStatusHolder {
+
+    private final Supplier<Boolean> loader;
+    private final long ttlMillis;
+    private final long stalenessLimitMillis;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Status status;
+    // 第一次读取时的上下文，后台刷新都使用它
+    private volatile ThreadContextSnapshot context;
+
+    // guarded by this
+    private ScheduledExecutorService scheduler;
+    private boolean shutdown;
+
+    /**
+     * @param loader query the status, true if online, null if it cannot be got
+     */
+    public PackingStatusHolder(Supplier<Boolean> loader, long ttlMillis, long stalenessLimitMillis) {
+        this.loader = loader;
+        this.ttlMillis = ttlMillis;
+        this.stalenessLimitMillis = stalenessLimitMillis;
+    }
+
+    /**
+     * Answer from memory; only the first read waits for the status to load.
+     */
+    public boolean isOnline() {
+        if (started.compareAndSet(false, true)) {
+            context = ThreadContextSnapshot.capture();
+            refresh();
+            scheduleRefresh();
+        }
+
+        Status current = status;
+        if (current == null) {
+            return false;
+        }
+        long age = System.currentTimeMillis() - current.updatedAt;
+        if (age > stalenessLimitMillis) {
+            log.warn("packing station status is stale, take it as offline, last status: {}, age: {} ms", current.online, age);
+            return false;
+        }
+        return current.online;
+    }
+
+    /**
+     * Update the status pushed by the packing station owner.
+     */
+    public void update(boolean online) {
+        status = new Status(online, System.currentTimeMillis());
+        log.debug("packing station status pushed, online: {}", online);
+    }
+
+    /**
+     * Stop reloading the status.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private synchronized void scheduleRefresh() {
+        if (shutdown) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sentrix-mobile-packing-status-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, ttlMillis, ttlMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh() {
+        ThreadContextSnapshot current = context;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.run(() -> {
+                Boolean online = loader.get();
+                if (online != null) {
+                    status = new Status(online, System.currentTimeMillis());
+                    log.debug("packing station status updated, online: {}", online);
+                }
+            });
+        } catch (Exception e) {
+            // 保留上一次获取到的状态
+            log.warn("refresh packing station status failed", e);
+        }
+    }
+
+    private record Status(boolean online, long updatedAt) {
+    }
+}
@@ -0,0 +1,36 @@
+package com.swms.plugins.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.pf4j.PluginState;
+import org.pf4j.PluginStateEvent;
+import org.pf4j.PluginStateListener;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the stop action once, when the plugin leaves the started state, e.g. to shut down its worker threads.
+ */
+@Slf4j
+public class PluginStopListener implements PluginStateListener {
+
+    private final String pluginId;
+    private final Runnable stopAction;
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    public PluginStopListener(String pluginId, Runnable stopAction) {
+        this.pluginId = pluginId;
+        this.stopAction = stopAction;
+    }
+
+    @Override
+    public void pluginStateChanged(PluginStateEvent event) {
+        if (!pluginId.equals(event.getPlugin().getPluginId())
+                || event.getOldState() != PluginState.STARTED || event.getPluginState() == PluginState.STARTED) {
+            return;
+        }
+        if (stopped.compareAndSet(false, true)) {
+            log.info("plugin {} {}, stop its workers", pluginId, event.getPluginState());
+            stopAction.run();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.swms.plugins.common;
+
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.context.ThreadLocalAccessor;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Key of the tenant of the current thread, to keep per tenant state of a plugin apart.
+ * <p>
+ * The plugin api gives no tenant id. The key is the propagated thread local value registered under the key set by
+ * {@code sentrix.plugin.tenant-context-key}. When it is not set, the key is made of all propagated values but the
+ * observation, which differs for every request: tenants are still kept apart, one tenant may be split by user.
+ */
+public final class TenantKey {
+
+    // 租户 id 在上下文传播中注册的 key，未配置时使用所有传播的值
+    private static final String TENANT_CONTEXT_KEY = System.getProperty("sentrix.plugin.tenant-context-key");
+
+    private TenantKey() {
+    }
+
+    public static Object current() {
+        Map<Object, Object> values = new HashMap<>();
+        for (ThreadLocalAccessor<?> accessor : ContextRegistry.getInstance().getThreadLocalAccessors()) {
+            if (TENANT_CONTEXT_KEY != null && TENANT_CONTEXT_KEY.equals(accessor.key())) {
+                return accessor.getValue();
+            }
+            Object value = accessor.getValue();
+            if (value != null && !ObservationThreadLocalAccessor.KEY.equals(accessor.key())) {
+                values.put(accessor.key(), value);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,32 @@
+package com.swms.plugins.common;
+
+import io.micrometer.context.ContextSnapshot;
+
+/**
+ * The propagated thread local values, e.g. tenant and user, of the thread that captured it, to restore around a task
+ * run on another thread, so the remote calls of the task are made for the same tenant and user as the caller.
+ * <p>
+ * Only the values registered for context propagation are carried, not the request of the caller: a snapshot may be
+ * used long after that request has finished.
+ */
+public final class ThreadContextSnapshot {
+
+    private final ContextSnapshot contextSnapshot;
+
+    private ThreadContextSnapshot(ContextSnapshot contextSnapshot) {
+        this.contextSnapshot = contextSnapshot;
+    }
+
+    public static ThreadContextSnapshot capture() {
+        return new ThreadContextSnapshot(ContextSnapshot.captureAll());
+    }
+
+    /**
+     * Run the task with the captured context, restoring the context of the current thread afterwards.
+     */
+    public void run(Runnable task) {
+        try (ContextSnapshot.Scope scope = contextSnapshot.setThreadLocals()) {
+            task.run();
+        }
+    }
+}